@@ -0,0 +1,108 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui;
+
+import hardwarestoregui.items.Item;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * This class represents the items of a checkout, before they are sold. It is
+ * filled line by line and then passed to <CODE>HardwareStore.checkout()</CODE>,
+ * which sells every line or none of them. Adding an item that is already in
+ * the cart adds to its line. Lines are keyed by item ID the way the store
+ * matches IDs, so one item never gets two lines.
+ *
+ * @author Zachary King
+ */
+public class Cart {
+
+    private final LinkedHashMap<String, Line> lines = new LinkedHashMap<String, Line>();
+
+    /**
+     * This class represents one line of a cart: an item and the quantity
+     * sold.
+     */
+    public static class Line {
+        private final Item item;
+        private int quantity;
+
+        Line(Item item, int quantity) {
+            this.item = item;
+            this.quantity = quantity;
+        }
+
+        /**
+         * Get the item of this line.
+         * @return item
+         */
+        public Item getItem() {
+            return item;
+        }
+
+        /**
+         * Get the quantity sold on this line.
+         * @return quantity
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+    }
+
+    /**
+     * Adds a quantity of an item to the cart.
+     * @param item the item, as returned by <CODE>findItem()</CODE>
+     * @param quantity the quantity to sell
+     * @throws IllegalArgumentException if the quantity is not positive, or
+     * the cart holds a different item with the same ID (the item was removed
+     * and added again since it was put in the cart)
+     */
+    public void add(Item item, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be larger than 0: " + quantity);
+        }
+        String key = HardwareStore.itemKey(item.getIdNumber());
+        Line line = lines.get(key);
+        if (line == null) {
+            lines.put(key, new Line(item, quantity));
+        } else if (line.item != item) {
+            throw new IllegalArgumentException("The cart already holds another item with ID "
+                    + item.getIdNumber() + ", which has been replaced in the store");
+        } else {
+            line.quantity += quantity;
+        }
+    }
+
+    /**
+     * Get the quantity of an item already in the cart.
+     * @param item the item
+     * @return the quantity, or 0 if the item is not in the cart
+     */
+    public int getQuantity(Item item) {
+        Line line = lines.get(HardwareStore.itemKey(item.getIdNumber()));
+        return line == null || line.item != item ? 0 : line.quantity;
+    }
+
+    /**
+     * Get the lines of the cart, in the order their items were first added.
+     * @return lines
+     */
+    public List<Line> getLines() {
+        return Collections.unmodifiableList(new ArrayList<Line>(lines.values()));
+    }
+
+    /**
+     * Returns true if nothing has been added.
+     * @return whether the cart is empty
+     */
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+}
@@ -5,37 +5,145 @@
  */
 package hardwarestoregui;
 
+import hardwarestoregui.format.TableWriter;
+import hardwarestoregui.index.FacetIndex;
+import hardwarestoregui.index.FacetIndex.Facet;
+import hardwarestoregui.index.FuzzyIndex;
+import hardwarestoregui.index.PrefixIndex;
+import hardwarestoregui.index.QuantityIndex;
+import hardwarestoregui.index.TransactionIndex;
+import hardwarestoregui.index.TrigramIndex;
 import hardwarestoregui.items.Appliances;
 import hardwarestoregui.items.Item;
 import hardwarestoregui.items.SmallHardwareItems;
+import hardwarestoregui.storage.Checkpointer;
+import hardwarestoregui.storage.FileStorageEngine;
+import hardwarestoregui.storage.InMemoryStorageEngine;
+import hardwarestoregui.storage.MappedStorageEngine;
+import hardwarestoregui.storage.ProgressListener;
+import hardwarestoregui.storage.SqlStorageEngine;
+import hardwarestoregui.storage.StorageEngine;
+import hardwarestoregui.storage.StoreSnapshot;
+import hardwarestoregui.storage.TransactionHistory;
 import hardwarestoregui.users.Customer;
 import hardwarestoregui.users.Employee;
 import hardwarestoregui.users.User;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class is used to represent a database interface for a list of
  * <CODE>item</CODE>'s. It using a plain-text file "database.txt" to store and
- * write item objects in readable text form. It contains an
- * <CODE>ArrayList</CODE> called <CODE>itemList</CODE> to store the database in
- * a runtime friendly data structure. The <CODE>itemList</CODE> is written to
+ * write item objects in readable text form. It contains a
+ * <CODE>ConcurrentSkipListMap</CODE> called <CODE>itemCatalog</CODE>, always
+ * ordered by item ID, to store the database in
+ * a runtime friendly data structure. The <CODE>itemCatalog</CODE> is written to
  * "database.txt" at the end of the <CODE>HardwareStore</CODE> object's life by
  * calling <CODE>writeDatabase()</CODE>. This class also provides methods for
  * adding, removing, and searching for items in the list.
  *
+ * Persistence is delegated to a <CODE>StorageEngine</CODE>, chosen at startup
+ * with <CODE>-Dhardwarestore.engine=</CODE>:
+ * <UL>
+ * <LI><CODE>file</CODE> (the default) - <CODE>FileStorageEngine</CODE>: a
+ * snapshot file plus a mutation log that is replayed at startup.</LI>
+ * <LI><CODE>mapped</CODE> - <CODE>MappedStorageEngine</CODE>: the same, with
+ * the items kept in a memory-mapped table.</LI>
+ * <LI><CODE>sql</CODE> - <CODE>SqlStorageEngine</CODE>: an embedded SQL
+ * database at <CODE>-Dhardwarestore.jdbc.url=</CODE> (SQLite's
+ * "database.db" by default).</LI>
+ * <LI><CODE>memory</CODE> - <CODE>InMemoryStorageEngine</CODE>: nothing is
+ * saved.</LI>
+ * </UL>
+ * The engine is told about every mutation as it happens. A background
+ * <CODE>Checkpointer</CODE> calls <CODE>writeDatabase()</CODE> on its own
+ * whenever the engine reports that a save is due.
+ *
+ * Transactions are kept in the engine's <CODE>TransactionHistory</CODE>.
+ * Startup does not read them; reports page through them on demand.
+ *
+ * The store is safe to use from several threads, for example several
+ * registers. Adding and removing items, changing users and copying the store
+ * for a checkpoint hold the write lock of <CODE>STORE_LOCK</CODE>. Quantity
+ * changes and sales only hold its read lock plus the lock of the item's
+ * stripe, under which the stock is checked and changed in one step, so sales
+ * of different items run in parallel. A change is made durable after the
+ * locks are released (see <CODE>awaitDurable()</CODE>), so the log can sync
+ * the changes of many registers at once; set
+ * <CODE>-Dhardwarestore.commit.millis=</CODE> to let it wait that long to
+ * gather them. A change is only confirmed once it is durable: if the engine
+ * cannot record it, or cannot make it durable, the mutator throws an
+ * <CODE>IOException</CODE> instead of returning. A cart checkout locks the stripes of all
+ * its items, always in increasing stripe order so that two checkouts can never
+ * wait for each other. A checkpoint only holds the write lock
+ * while it copies the store, and writes the copy to disk after releasing it.
+ *
+ * Reports read the store through a <CODE>StoreView</CODE> (see
+ * <CODE>openView()</CODE>), which sees every item, user and transaction as
+ * they were at one version and takes no lock, so a long report neither holds
+ * up sales nor sees half of them. Every change takes a version from the
+ * <CODE>versionClock</CODE>, and what it replaces is kept until no open view
+ * can read it any more.
+ *
  * @author Andrew Hyatt
  * @author Zachary King
  */
 public class HardwareStore {
 
-    private static ArrayList<Item> itemList;
-    private static ArrayList<User> userList;
-    private static ArrayList<Transaction> transactionList;
+    private static ConcurrentSkipListMap<String, Item> itemCatalog;
+    private static ConcurrentHashMap<String, Item> itemIndex;
+    private static ConcurrentSkipListMap<String, Item> itemKeyCatalog;
+    private static TrigramIndex nameIndex;
+    private static QuantityIndex quantityIndex;
+    private static PrefixIndex prefixIndex;
+    private static FuzzyIndex fuzzyIndex;
+    private static FacetIndex facetIndex;
+    private static ConcurrentSkipListMap<Integer, User> userCatalog;
+    private static ConcurrentHashMap<Integer, User> userIndex;
+    private static TransactionHistory transactionHistory;
+    private static TransactionIndex transactionIndex;
     private static int userIdCounter;
 
-    private static final String DATA_FILE_NAME = "database.ser";
+    // The versions of the changes and of the open store views, the items
+    // removed and restocked since the oldest open view, and the number of
+    // transactions at each version a sale was made
+    private static VersionClock versionClock;
+    private static ConcurrentLinkedQueue<Item> retiredItems;
+    private static ConcurrentSkipListMap<Long, Item> restockedItems;
+    private static ConcurrentSkipListMap<Long, Long> transactionCounts;
+
+    private static StorageEngine storageEngine;
+    private static Checkpointer checkpointer;
+
+    // Held for writing by changes to the catalog, the users and while the
+    // store is copied; held for reading by quantity changes and sales, which
+    // then only lock their item's stripe
+    private static final ReentrantReadWriteLock STORE_LOCK = new ReentrantReadWriteLock();
+    private static final ReentrantLock[] ITEM_LOCKS = new ReentrantLock[64];
+    private static final Object SALE_LOCK = new Object();
+    private static final Object CHECKPOINT_LOCK = new Object();
+
+    static {
+        for (int i = 0; i < ITEM_LOCKS.length; i++) {
+            ITEM_LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    private static final String ENGINE = System.getProperty("hardwarestore.engine", "file");
+    private static final String JDBC_URL = System.getProperty("hardwarestore.jdbc.url", "jdbc:sqlite:database.db");
+
+    // Checkpoint once the log holds 4 MB or its oldest record is 5 minutes old
+    private static final long CHECKPOINT_LOG_BYTES = Long.getLong("hardwarestore.checkpoint.bytes", 4L << 20);
+    private static final long CHECKPOINT_LOG_AGE_MILLIS = Long.getLong("hardwarestore.checkpoint.millis", 5 * 60 * 1000L);
+    // How long the log waits for more changes before syncing a group of
+    // them; 0 syncs as soon as the previous sync has finished
+    private static final long COMMIT_WINDOW_MILLIS = Long.getLong("hardwarestore.commit.millis", 0);
 
     /**
      * This constructor creates an empty ArrayList and then calls the 
@@ -48,120 +156,334 @@ public class HardwareStore {
     }
 
     /**
-     * Method getAllItemsFormatted returns the current list of items in the Arraylist in
-     * no particular order.
+     * Method getAllItemsFormatted returns the current list of items, sorted
+     * by ID. The catalog is kept in that order, so nothing has to be sorted.
+     * The items are read through a <CODE>StoreView</CODE>, so quantities sold
+     * while the table is formatted do not show up in it.
      * 
-     * @return a formatted String representation of all the items in itemList.
+     * @return a formatted String representation of all the items in itemCatalog.
      */
     public String getAllItemsFormatted() {
-        return getFormattedItemList(itemList);
+        try (StoreView view = openView()) {
+            return getFormattedItemList(view.getItems());
+        }
     }
 
     /**
-     * Private method getFormattedItemList used as an auxiliary method to return a given ArrayList
+     * Private method getFormattedItemList used as an auxiliary method to return a given collection
      * of items in a formatted manner.
      *
-     * @param items the item list to be displayed.
+     * @param items the items to be displayed.
      * @return a formatted String representation of all the items in the list give as a parameter.
      */
-    private String getFormattedItemList(ArrayList<Item> items) {
-
-        String text = " ------------------------------------------------------------------------------------------------------------------\n" +
-                String.format("| %-8s| %-25s| %-10s| %-10s| %-20s| %-30s|%n", "Item ID", "Name", "Quantity", "Price", "Item Type", "Category / Brand and type") +
-                      " ------------------------------------------------------------------------------------------------------------------\n";
-
-        for (Item item : items) {
-           text += item.getFormattedText();
-           text += " ------------------------------------------------------------------------------------------------------------------\n";
-        }
-        //text += " ------------------------------------------------------------------------------------------------------------------\n";
-
-        return text;
+    private String getFormattedItemList(Collection<Item> items) {
+        return TableWriter.formatItems(items);
     }
 
     /**
      * Method getAllItemsFormatted returns the current list of users in the Arraylist in
      * no particular order.
      *
-     * @return a formatted String representation of all the users in userList.
+     * @return a formatted String representation of all the users in userCatalog.
      */
     public String getAllUsersFormatted() {
-        return getFormattedUserList(userList);
+        return TableWriter.formatUsers(getAllUsers());
     }
 
     /**
-     * Private method getFormattedUserList used as an auxiliary method to return a given ArrayList
-     * of users in a formatted manner.
+     * Method getAllTransactionsFormatted returns all transactions, oldest first.
+     * Transactions already in the transaction file are read page by page.
      *
-     * @param users the user list to be displayed.
-     * @return a formatted String representation of all the users in the list give as a parameter.
+     * @return a formatted String representation of all the transactions in transactionHistory.
      */
-    private String getFormattedUserList(ArrayList<User> users) {
+    public String getAllTransactionsFormatted() {
+        try (StoreView view = openView()) {
+            return TableWriter.formatTransactions(view.getTransactions(), view.getTransactionCount());
+        }
+    }
 
-        String text = " -------------------------------------------------------------------------------------------------\n" +
-                String.format("| %-10s| %-9s| %-12s| %-12s| %-45s|%n", "User Type", "User ID", "First Name", "Last Name", "Special") +
-                " -------------------------------------------------------------------------------------------------\n";
+    /**
+     * Writes the table of all items, sorted by ID, to the given output one
+     * row at a time, so the catalog can be exported however large it is.
+     *
+     * @param out where to write the table, for example a <CODE>Writer</CODE>
+     * @throws IOException if <CODE>out</CODE> cannot be written
+     */
+    public void writeAllItems(Appendable out) throws IOException {
+        try (StoreView view = openView()) {
+            TableWriter.writeItems(view.getItems(), out);
+        }
+    }
 
-        for (User user : users) {
-            text += user.getFormattedText();
-            text += " -------------------------------------------------------------------------------------------------\n";
+    /**
+     * Writes the table of all users to the given output one row at a time.
+     *
+     * @param out where to write the table, for example a <CODE>Writer</CODE>
+     * @throws IOException if <CODE>out</CODE> cannot be written
+     */
+    public void writeAllUsers(Appendable out) throws IOException {
+        try (StoreView view = openView()) {
+            TableWriter.writeUsers(view.getUsers(), out);
         }
-        //text += " -------------------------------------------------------------------------------------------------\n";
+    }
 
-        return text;
+    /**
+     * Writes the table of all transactions, oldest first, to the given output
+     * one row at a time. The transaction file is read a page at a time, so
+     * neither the history nor the table is ever held in memory as a whole.
+     *
+     * @param out where to write the table, for example a <CODE>Writer</CODE>
+     * @throws IOException if <CODE>out</CODE> cannot be written
+     */
+    public void writeAllTransactions(Appendable out) throws IOException {
+        writeAllTransactions(out, null);
     }
 
     /**
-     * Method getAllTransactionsFormatted returns the current list of transactions in the Arraylist in
-     * no particular order.
+     * Same as <CODE>writeAllTransactions(out)</CODE>, but reports how many
+     * rows have been written to the given listener, which may cancel the
+     * export by throwing a <CODE>CancellationException</CODE>.
      *
-     * @return a formatted String representation of all the transactions in transactionList.
+     * @param out where to write the table, for example a <CODE>Writer</CODE>
+     * @param listener receives progress reports, or null
+     * @throws IOException if <CODE>out</CODE> cannot be written
      */
-    public String getAllTransactionsFormatted() {
-        return getFormattedTransactionList(transactionList);
+    public void writeAllTransactions(Appendable out, ProgressListener listener) throws IOException {
+        try (StoreView view = openView()) {
+            TableWriter.writeTransactions(view.getTransactions(), out, view.getTransactionCount(), listener);
+        }
     }
 
     /**
-     * Private method getFormattedTransactionList used as an auxiliary method to return a given ArrayList
-     * of items in a formatted manner.
+     * Opens a view of the store as it is now. Everything read through the
+     * view stays as it was at this moment while sales and other changes go
+     * on, so several tables written from one view always agree with each
+     * other. The view must be closed once it is no longer used, since the
+     * store keeps the old state it may read until then.
      *
-     * @param transactions the transaction list to be displayed.
-     * @return a formatted String representation of all the items in the list give as a parameter.
+     * @return the view
+     */
+    public StoreView openView() {
+        long version = versionClock.open();
+        long count = transactionCounts.floorEntry(version).getValue();
+        return new StoreView(versionClock, version, itemCatalog, retiredItems, quantityIndex,
+                restockedItems, userCatalog, transactionHistory, count);
+    }
+
+    /**
+     * Returns all the sales of the given item, oldest first.
+     * @param itemId the item ID, matched ignoring case.
+     * @return a string containing a table of the matching transactions, or
+     * null if there are none.
      */
-    private String getFormattedTransactionList(ArrayList<Transaction> transactions) {
+    public String getMatchingTransactionsByItem(String itemId) {
+        return getFormattedTransactions(getTransactionPositionsByItem(itemId), null, null);
+    }
 
-        String text = " -----------------------------------------------------------------------------------\n" +
-                String.format("| %-10s| %-30s| %-10s| %-12s| %-12s|%n", "Item ID", "Date", "Quantity", "Customer ID", "Employee ID") +
-                " -----------------------------------------------------------------------------------\n";
+    /**
+     * Returns all the purchases of the given customer, oldest first.
+     * @param customerId the customer ID.
+     * @return a string containing a table of the matching transactions, or
+     * null if there are none.
+     */
+    public String getMatchingTransactionsByCustomer(int customerId) {
+        return getFormattedTransactions(getTransactionPositionsByCustomer(customerId), null, null);
+    }
 
-        for (Transaction transaction : transactions) {
-            text += transaction.getFormattedText();
-            text += " -----------------------------------------------------------------------------------\n";
+    /**
+     * Returns all the sales made by the given employee, oldest first.
+     * @param employeeId the employee ID.
+     * @return a string containing a table of the matching transactions, or
+     * null if there are none.
+     */
+    public String getMatchingTransactionsByEmployee(int employeeId) {
+        return getFormattedTransactions(getTransactionPositionsByEmployee(employeeId), null, null);
+    }
+
+    /**
+     * Returns all the sales made between the two given dates (both
+     * included), oldest first.
+     * @param from the start of the range.
+     * @param to the end of the range.
+     * @return a string containing a table of the matching transactions, or
+     * null if there are none.
+     */
+    public String getMatchingTransactionsByDate(Date from, Date to) {
+        if (from.after(to)) {
+            return null;
+        }
+        TransactionIndex index = getTransactionIndex();
+        long[] positions;
+        synchronized (SALE_LOCK) {
+            positions = index.byDays(from, to);
         }
-        //text += " -----------------------------------------------------------------------------------\n";
+        return getFormattedTransactions(positions, from, to);
+    }
+
+    /**
+     * Returns the number of transactions in the history.
+     * @return the transaction count
+     */
+    public long getTransactionCount() {
+        return transactionHistory.size();
+    }
+
+    /**
+     * Returns the transaction at the given position in the history. Archived
+     * transactions are read a page at a time and recently used pages are
+     * kept, so reading neighbouring positions is cheap.
+     * @param position the position, from 0 (oldest) to
+     * <CODE>getTransactionCount()</CODE> - 1
+     * @return the transaction
+     * @throws IOException if the transaction file cannot be read
+     */
+    public Transaction getTransaction(long position) throws IOException {
+        return transactionHistory.get(position);
+    }
+
+    /**
+     * Returns the positions in the history of all the sales of the given
+     * item, oldest first.
+     * @param itemId the item ID, matched ignoring case.
+     * @return the positions, possibly none
+     */
+    public long[] getTransactionPositionsByItem(String itemId) {
+        TransactionIndex index = getTransactionIndex();
+        synchronized (SALE_LOCK) {
+            return index.byItem(itemId);
+        }
+    }
+
+    /**
+     * Returns the positions in the history of all the purchases of the given
+     * customer, oldest first.
+     * @param customerId the customer ID.
+     * @return the positions, possibly none
+     */
+    public long[] getTransactionPositionsByCustomer(int customerId) {
+        TransactionIndex index = getTransactionIndex();
+        synchronized (SALE_LOCK) {
+            return index.byCustomer(customerId);
+        }
+    }
+
+    /**
+     * Returns the positions in the history of all the sales made by the
+     * given employee, oldest first.
+     * @param employeeId the employee ID.
+     * @return the positions, possibly none
+     */
+    public long[] getTransactionPositionsByEmployee(int employeeId) {
+        TransactionIndex index = getTransactionIndex();
+        synchronized (SALE_LOCK) {
+            return index.byEmployee(employeeId);
+        }
+    }
+
+    /**
+     * Reads the transactions at the given positions and formats them. Only
+     * those positions are read from the history.
+     *
+     * @param positions the positions, in increasing order
+     * @param from if not null, transactions made before this are skipped
+     * @param to if not null, transactions made after this are skipped
+     * @return a formatted table, or null if no transaction was left
+     */
+    private String getFormattedTransactions(long[] positions, Date from, Date to) {
+        ArrayList<Transaction> transactions = new ArrayList<Transaction>(positions.length);
+        try {
+            for (long position : positions) {
+                Transaction transaction = transactionHistory.get(position);
+                Date date = transaction.getsaleDate();
+                if ((from == null || !date.before(from)) && (to == null || !date.after(to))) {
+                    transactions.add(transaction);
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println(ex.toString());
+            return null;
+        }
+        if (transactions.isEmpty()) {
+            return null;
+        } else {
+            return getFormattedTransactionList(transactions);
+        }
+    }
 
-        return text;
+    /**
+     * Returns the <CODE>transactionIndex</CODE>, building it on first use so
+     * startup still does not have to read the history. The history is read
+     * without holding <CODE>SALE_LOCK</CODE>; the sales made meanwhile are
+     * added under the lock, after which every sale keeps the index current.
+     *
+     * @return the transaction index
+     */
+    private static TransactionIndex getTransactionIndex() {
+        synchronized (SALE_LOCK) {
+            if (transactionIndex != null) {
+                return transactionIndex;
+            }
+        }
+        TransactionIndex index = new TransactionIndex();
+        long position = 0;
+        for (Transaction transaction : transactionHistory) {
+            index.add(position++, transaction);
+        }
+        synchronized (SALE_LOCK) {
+            if (transactionIndex == null) {
+                try {
+                    long size = transactionHistory.size();
+                    for (Transaction transaction : transactionHistory.getRange(position, (int) (size - position))) {
+                        index.add(position++, transaction);
+                    }
+                } catch (IOException ex) {
+                    // Leave it unset, so the next query tries again
+                    System.err.println(ex.toString());
+                    return index;
+                }
+                transactionIndex = index;
+            }
+            return transactionIndex;
+        }
+    }
+
+    /**
+     * Private method getFormattedTransactionList used as an auxiliary method to return a given list
+     * of items in a formatted manner.
+     *
+     * @param transactions the transactions to be displayed.
+     * @return a formatted String representation of all the items in the list give as a parameter.
+     */
+    private String getFormattedTransactionList(Collection<Transaction> transactions) {
+        return TableWriter.formatTransactions(transactions, transactions.size());
     }
 
 
 
     /**
-     * This method is used to add a small hardware item to the itemList ArrayList.
+     * This method is used to add a small hardware item to the itemCatalog.
      *
      * @param idNumber a <CODE>String</CODE> representing the ID number of item
      * @param name a <CODE>String</CODE> representing the name of item
      * @param quantity an <CODE>int</CODE> representing the quantity of item
      * @param price a <CODE>float</CODE> representing the price of item
      * @param category a <CODE>String</CODE> representing the category of item
+     * @return false, with nothing added, if an item with this ID exists
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void addNewSmallHardwareItem(String idNumber, String name, int quantity, float price, String category) {
+    public boolean addNewSmallHardwareItem(String idNumber, String name, int quantity, float price, String category) throws IOException {
         //If passed all the checks, add the item to the list
-        itemList.add(new SmallHardwareItems(idNumber, name, quantity, price, category));
+        if (!putItem(new SmallHardwareItems(idNumber, name, quantity, price, category))) {
+            return false;
+        }
+        awaitDurable();
         System.out.println("New small hardware item has been added.");
+        return true;
     }
 
     /**
-     * This method is used to add an appliance to the itemList ArrayList.
+     * This method is used to add an appliance to the itemCatalog.
      *
      * @param idNumber a <CODE>String</CODE> representing the ID number of item
      * @param name a <CODE>String</CODE> representing the name of item
@@ -169,11 +491,55 @@ public class HardwareStore {
      * @param price a <CODE>float</CODE> representing the price of item
      * @param brand a <CODE>String</CODE> representing the brand of item
      * @param type a <CODE>String</CODE> representing the type of item
+     * @return false, with nothing added, if an item with this ID exists
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void addNewAppliance(String idNumber, String name, int quantity, float price, String brand, String type) {
+    public boolean addNewAppliance(String idNumber, String name, int quantity, float price, String brand, String type) throws IOException {
         //If passed all the checks, add the item to the list
-        itemList.add(new Appliances(idNumber, name, quantity, price, brand, type));
+        if (!putItem(new Appliances(idNumber, name, quantity, price, brand, type))) {
+            return false;
+        }
+        awaitDurable();
         System.out.println("New appliance has been added.");
+        return true;
+    }
+
+
+    /**
+     * Records and adds a new item to the catalog and the indexes, unless an
+     * item with the same ID (ignoring case) is there already. The check and
+     * the addition are made under the write lock, so two additions of one
+     * ID cannot both get in.
+     * @param item the item
+     * @return false if an item with this ID exists
+     * @throws IOException if the storage engine could not record the change
+     */
+    private static boolean putItem(Item item) throws IOException {
+        STORE_LOCK.writeLock().lock();
+        try {
+            if (itemIndex.containsKey(itemKey(item.getIdNumber()))) {
+                return false;
+            }
+            long version = versionClock.begin();
+            try {
+                item.setAddedVersion(version);
+                storageEngine.itemAdded(item);
+                itemCatalog.put(item.getIdNumber(), item);
+                itemIndex.put(itemKey(item.getIdNumber()), item);
+                itemKeyCatalog.put(itemKey(item.getIdNumber()), item);
+                nameIndex.add(item);
+                quantityIndex.add(item);
+                prefixIndex.add(item);
+                fuzzyIndex.add(item);
+                facetIndex.add(item);
+            } finally {
+                versionClock.end(version);
+            }
+            return true;
+        } finally {
+            STORE_LOCK.writeLock().unlock();
+        }
     }
 
 
@@ -182,10 +548,17 @@ public class HardwareStore {
      * @param lastName a <CODE>String</CODE> representing the last name of user
      * @param phoneNumber a <CODE>String</CODE> representing the telephone number of user
      * @param address a <CODE>String</CODE> representing the address of user
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void addCustomer(String firstName, String lastName, String phoneNumber, String address) {
-        userList.add(new Customer(userIdCounter++, firstName, lastName, phoneNumber, address));
-        sortUserList();
+    public void addCustomer(String firstName, String lastName, String phoneNumber, String address) throws IOException {
+        STORE_LOCK.writeLock().lock();
+        try {
+            saveUser(new Customer(userIdCounter++, firstName, lastName, phoneNumber, address));
+        } finally {
+            STORE_LOCK.writeLock().unlock();
+        }
+        awaitDurable();
         System.out.println("New customer has been added.");
     }
 
@@ -194,50 +567,66 @@ public class HardwareStore {
      * @param lastName a <CODE>String</CODE> representing the last name of user
      * @param ssn an <CODE>int</CODE> representing the ssn of user
      * @param monthlySalary a <CODE>float</CODE> representing the monthly salary of user
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void addEmployee(String firstName, String lastName, int ssn, float monthlySalary) {
-        userList.add(new Employee(userIdCounter++, firstName, lastName, ssn, monthlySalary));
-        sortUserList();
+    public void addEmployee(String firstName, String lastName, int ssn, float monthlySalary) throws IOException {
+        STORE_LOCK.writeLock().lock();
+        try {
+            saveUser(new Employee(userIdCounter++, firstName, lastName, ssn, monthlySalary));
+        } finally {
+            STORE_LOCK.writeLock().unlock();
+        }
+        awaitDurable();
         System.out.println("New employee has been added.");
     }
 
 
     /**
-     * Add a certain quantity of the given item index.
+     * Add a certain quantity of the given item.
      * Preconditions: 1. Item exists.
-     * @param itemIndex the index of the item in the itemList
+     * @param item the item, as returned by <CODE>findItem()</CODE>
      * @param quantity  the quantity to add
+     * @return false if the item has been removed meanwhile
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void addQuantity(int itemIndex, int quantity) {
-        Item temp = getItem(itemIndex);
-        temp.setQuantity(temp.getQuantity() + quantity);
-        System.out.println("Quantity updated.");
+    public boolean addQuantity(Item item, int quantity) throws IOException {
+        boolean updated = changeQuantity(item, quantity, 0);
+        if (updated) {
+            System.out.println("Quantity updated.");
+        }
+        return updated;
     }
 
     /**
-     * Removes a certain quantity of the given item index. 
-     * Preconditions: 1. Item exists. 2. Quantity to remove smaller than current quantity.
-     * @param itemIndex the index of the item in the itemList
+     * Removes a certain quantity of the given item. The stock is checked and
+     * reduced in one step, so two registers cannot both take the last units.
+     * Preconditions: 1. Item exists.
+     * @param item the item, as returned by <CODE>findItem()</CODE>
      * @param quantity  the quantity to remove
+     * @return false, with nothing changed, if there is not enough stock left
+     * or the item has been removed meanwhile
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void removeQuantity(int itemIndex, int quantity) {
-        Item temp = getItem(itemIndex);
-        temp.setQuantity(temp.getQuantity() - quantity);
-        System.out.println("Quantity updated.\n");
+    public boolean removeQuantity(Item item, int quantity) throws IOException {
+        boolean updated = changeQuantity(item, -quantity, quantity);
+        if (updated) {
+            System.out.println("Quantity updated.\n");
+        }
+        return updated;
     }
 
     /**
-     * Returns all the items that (partially) match the given name.
+     * Returns all the items that (partially) match the given name, ignoring
+     * case and sorted by ID. Candidates come from the <CODE>nameIndex</CODE>
+     * trigram index rather than a scan of every item.
      * @param name the name to match.
      * @return a string containing a table of the matching items.
      */
     public String getMatchingItemsByName(String name) {
-        ArrayList<Item> temp = new ArrayList<Item>();
-        for (Item tempItem : itemList) {
-            if (tempItem.getName().toLowerCase().contains(name.toLowerCase())) {
-                temp.add(tempItem);
-            }
-        }
+        ArrayList<Item> temp = new ArrayList<Item>(getItemsByName(name));
         
         if (temp.size() == 0) {
             return null;
@@ -246,18 +635,83 @@ public class HardwareStore {
         }
     }
 
+    /**
+     * Returns the items whose name is close to the given (possibly
+     * misspelled) name, best match first. Every word of the name must be
+     * within one or two typing mistakes of a word of the item's name. The
+     * matches are found with the <CODE>fuzzyIndex</CODE> BK-tree instead of
+     * comparing the name with every item.
+     * @param name the name to match.
+     * @return a string containing a table of the matching items, or null if
+     * there are none.
+     */
+    public String getFuzzyMatchingItemsByName(String name) {
+        List<Item> temp;
+        STORE_LOCK.readLock().lock();
+        try {
+            temp = fuzzyIndex.search(name);
+        } finally {
+            STORE_LOCK.readLock().unlock();
+        }
+
+        if (temp.isEmpty()) {
+            return null;
+        } else {
+            return getFormattedItemList(temp);
+        }
+    }
+
+    /**
+     * Returns the first few items whose ID, name, or a word of whose name
+     * starts with the given text, for autocompletion while a name is typed.
+     * The items come from the <CODE>prefixIndex</CODE>, so this stays fast
+     * however large the catalog is.
+     * @param prefix the text typed so far, matched ignoring case.
+     * @param limit the maximum number of items to return.
+     * @return the completions, possibly none.
+     */
+    public List<Item> getCompletions(String prefix, int limit) {
+        STORE_LOCK.readLock().lock();
+        try {
+            return prefixIndex.complete(prefix, limit);
+        } finally {
+            STORE_LOCK.readLock().unlock();
+        }
+    }
+
     /**
      * Returns all the items with current quantity lower than (or equal) the
-     * given threshold.
+     * given threshold, sorted by ID.
      * @param quantity the quantity threshold.
      * @return a string containing a table of the matching items.
      */
     public String getMatchingItemsByQuantity(int quantity) {
-        ArrayList<Item> temp = new ArrayList<Item>();
-        for (Item tempItem : itemList) {
-            if (tempItem.getQuantity() <= quantity) {
-                temp.add(tempItem);
-            }
+        return getMatchingItemsByQuantity(quantity, false);
+    }
+
+    /**
+     * Returns all the items with current quantity lower than (or equal) the
+     * given threshold. The items are read through a <CODE>StoreView</CODE>,
+     * which finds them with a range query on the <CODE>quantityIndex</CODE>,
+     * so only the matching items are visited.
+     * @param quantity the quantity threshold.
+     * @param lowestFirst true to list the items in ascending order of stock
+     * instead of by ID.
+     * @return a string containing a table of the matching items.
+     */
+    public String getMatchingItemsByQuantity(int quantity, boolean lowestFirst) {
+        List<Item> temp;
+        try (StoreView view = openView()) {
+            temp = view.getItemsAtMost(quantity);
+        }
+        if (lowestFirst) {
+            // The sort is stable, so equal quantities stay ordered by ID
+            temp.sort(new Comparator<Item>() {
+                @Override
+                public int compare(Item o1, Item o2) {
+                    return Integer.compare(o1.getQuantity(), o2.getQuantity());
+                }
+            });
         }
         
         if (temp.isEmpty()) {
@@ -268,202 +722,761 @@ public class HardwareStore {
     }
 
     /**
-     * This method can be used to find a item in the Arraylist of items.
-     *
-     * @param id a <CODE>String</CODE> that represents the ID of
-     * the item that to be searched for.
-     * @return the <CODE>Item</CODE> in the Arraylist of
-     * items, or null if the search failed.
+     * Returns all the small hardware items of the given category, sorted by
+     * ID. The items come straight from the <CODE>facetIndex</CODE>.
+     * @param category the category, matched ignoring case.
+     * @return a string containing a table of the matching items, or null if
+     * there are none.
      */
-    public Item findItem(String id) {
-        Item item = null;
-        for (int i = 0; i < itemList.size(); i++) {
-            if (itemList.get(i).getIdNumber().equals(id)) {
-                item = itemList.get(i);
-                break;
-            }
-
-        }
-        return item;
+    public String getMatchingItemsByCategory(String category) {
+        return getFormattedFacet(Facet.CATEGORY, category);
     }
 
+    /**
+     * Returns all the appliances of the given brand, sorted by ID. The items
+     * come straight from the <CODE>facetIndex</CODE>.
+     * @param brand the brand, matched ignoring case.
+     * @return a string containing a table of the matching items, or null if
+     * there are none.
+     */
+    public String getMatchingItemsByBrand(String brand) {
+        return getFormattedFacet(Facet.BRAND, brand);
+    }
 
     /**
-     * This method can be used to find a item in the Arraylist of items.
-     *
-     * @param idNumber a <CODE>String</CODE> that represents the ID number of
-     * the item that to be searched for.
-     * @return the <CODE>int</CODE> index of the items in the Arraylist of
-     * items, or -1 if the search failed.
+     * Returns all the appliances of the given type, sorted by ID. The items
+     * come straight from the <CODE>facetIndex</CODE>.
+     * @param type the appliance type, matched ignoring case.
+     * @return a string containing a table of the matching items, or null if
+     * there are none.
      */
-    public int findItemIndex(String idNumber) {
-        int index = -1;
-        for (int i = 0; i < itemList.size(); i++) {
-            String temp = itemList.get(i).getIdNumber();
+    public String getMatchingItemsByApplianceType(String type) {
+        return getFormattedFacet(Facet.TYPE, type);
+    }
 
-            if (idNumber.equalsIgnoreCase(temp)) {
-                index = i;
-                break;
+    /**
+     * Returns all the items whose category, brand or appliance type is the
+     * given value, sorted by ID.
+     * @param value the category, brand or type, matched ignoring case.
+     * @return a string containing a table of the matching items, or null if
+     * there are none.
+     */
+    public String getMatchingItemsByFacet(String value) {
+        TreeMap<String, Item> temp = new TreeMap<String, Item>();
+        for (Facet facet : Facet.values()) {
+            for (Item item : facetIndex.items(facet, value)) {
+                temp.put(item.getIdNumber(), item);
             }
+        }
 
+        if (temp.isEmpty()) {
+            return null;
+        } else {
+            return getFormattedItemList(temp.values());
         }
-        return index;
     }
 
     /**
-     * This method can be used to find a user in the Arraylist of users.
-     *
-     * @param id an <CODE>int</CODE> that represents the ID of
-     * the user that to be searched for.
-     * @return the <CODE>User</CODE> in the Arraylist of
-     * users, or null if the search failed.
+     * Returns a table of the items with the given value of a facet.
+     * @param facet the facet
+     * @param value the value, matched ignoring case
+     * @return the table, or null if there are no such items
      */
-    public User findUser(int id) {
-        User user = null;
-        for (int i = 0; i < userList.size(); i++) {
-            if (userList.get(i).getId() == id) {
-                user = userList.get(i);
-                break;
+    private String getFormattedFacet(Facet facet, String value) {
+        List<Item> temp = facetIndex.items(facet, value);
+
+        if (temp.isEmpty()) {
+            return null;
+        } else {
+            return getFormattedItemList(temp);
+        }
+    }
+
+    /**
+     * Returns a table of every category, brand and appliance type with the
+     * number of items and the total quantity in stock for each. The totals
+     * are kept up to date by the <CODE>facetIndex</CODE> as items are added,
+     * removed and sold, so no item is looked at.
+     * @return a string containing the table.
+     */
+    public String getFormattedFacetCounts() {
+        StringBuilder text = new StringBuilder(" ----------------------------------------------------------------------\n")
+                .append(String.format("| %-15s| %-30s| %-8s| %-10s|%n", "Facet", "Value", "Items", "Stock"))
+                .append(" ----------------------------------------------------------------------\n");
+        for (Facet facet : Facet.values()) {
+            for (FacetIndex.Bucket bucket : facetIndex.buckets(facet)) {
+                text.append(String.format("| %-15s| %-30s| %-8d| %-10d|%n",
+                        facet.getLabel(), bucket.getValue(), bucket.getItemCount(), bucket.getStock()));
+                text.append(" ----------------------------------------------------------------------\n");
             }
+        }
+        return text.toString();
+    }
 
+    /**
+     * Returns all the items, sorted by ID. Only the references are copied;
+     * nothing is formatted.
+     * @return the items
+     */
+    public List<Item> getAllItems() {
+        return new ArrayList<Item>(itemCatalog.values());
+    }
+
+    /**
+     * Returns all the items, lowest quantity first and then by ID, in the
+     * order they are kept in the <CODE>quantityIndex</CODE>.
+     * @return the items
+     */
+    public List<Item> getAllItemsByQuantity() {
+        return quantityIndex.atMost(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the items whose name contains the given text, ignoring case and
+     * sorted by ID, from the <CODE>nameIndex</CODE>.
+     * @param name the name to match.
+     * @return the items, possibly none
+     */
+    public List<Item> getItemsByName(String name) {
+        STORE_LOCK.readLock().lock();
+        try {
+            return nameIndex.search(name);
+        } finally {
+            STORE_LOCK.readLock().unlock();
         }
-        return user;
     }
 
+    /**
+     * Returns all the users, sorted by ID, read through a
+     * <CODE>StoreView</CODE>.
+     * @return the users
+     */
+    public List<User> getAllUsers() {
+        try (StoreView view = openView()) {
+            return view.getUsers();
+        }
+    }
 
     /**
-     * This method can be used to find the index of user in the Arraylist of users.
+     * Returns all the items whose ID lies between the two given IDs
+     * (inclusive), ignoring case like every other ID lookup, and sorted the
+     * same way. This is a range scan of the <CODE>itemKeyCatalog</CODE>,
+     * which is already in that order. The IDs may be given in either order.
+     * @param fromId one end of the range.
+     * @param toId the other end of the range.
+     * @return a string containing a table of the matching items.
+     */
+    public String getMatchingItemsByIdRange(String fromId, String toId) {
+        String fromKey = itemKey(fromId);
+        String toKey = itemKey(toId);
+        if (fromKey.compareTo(toKey) > 0) {
+            String swapped = fromKey;
+            fromKey = toKey;
+            toKey = swapped;
+        }
+        Collection<Item> temp = itemKeyCatalog.subMap(fromKey, true, toKey, true).values();
+
+        if (temp.isEmpty()) {
+            return null;
+        } else {
+            return getFormattedItemList(temp);
+        }
+    }
+
+    /**
+     * This method can be used to find a item by its ID, ignoring case. The
+     * lookup goes through the <CODE>itemIndex</CODE> hash map, so it takes
+     * the same time however many items there are.
      *
      * @param id a <CODE>String</CODE> that represents the ID of
-     * the user that to be searched for.
-     * @return the <CODE>int</CODE> index of the user in the Arraylist of
-     * users, or -1 if the search failed.
-     */
-    public int findUserIndex(int id) {
-        int index = -1;
-        for (int i = 0; i < userList.size(); i++) {
-            if (userList.get(i).getId() == id) {
-                index = i;
-                break;
-            }
-
+     * the item that to be searched for.
+     * @return the <CODE>Item</CODE> with that ID, or null if the search
+     * failed (or the ID is null).
+     */
+    public Item findItem(String id) {
+        if (id == null) {
+            return null;
         }
-        return index;
+        return itemIndex.get(itemKey(id));
     }
+
+    /**
+     * Returns the key an item ID is stored under in the
+     * <CODE>itemIndex</CODE> and the <CODE>itemKeyCatalog</CODE>. IDs are
+     * matched ignoring case, here and by <CODE>Cart</CODE>.
+     *
+     * @param id the item ID
+     * @return the normalized ID
+     */
+    static String itemKey(String id) {
+        return id.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * This method can be used to find a user by its ID. The lookup goes
+     * through the <CODE>userIndex</CODE> hash map, so it takes the same time
+     * however many users there are.
+     *
+     * @param id an <CODE>int</CODE> that represents the ID of
+     * the user that to be searched for.
+     * @return the <CODE>User</CODE> with that ID, or null if the search failed.
+     */
+    public User findUser(int id) {
+        return userIndex.get(id);
+    }
+
     /**
      * This method will edit information of an customer.
-     * It will first remove the old entry and add a new one with same user ID
+     * The existing customer is updated in place, keeping its entry in the user
+     * list. A copy of the old information is kept for the store views opened
+     * before the edit.
      * @param idInput the <CODE>int</CODE> index of the user's ID
      * @param firstName a <CODE>String</CODE> representing the first name of user
      * @param lastName a <CODE>String</CODE> representing the last name of user
      * @param phoneNumber a <CODE>String</CODE> representing the telephone number of user
      * @param address a <CODE>String</CODE> representing the address of user
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void editCustomerInformation(int idInput, String firstName, String lastName, String phoneNumber, String address) {
-        userList.remove(findUserIndex(idInput));
-        userList.add(new Customer(idInput, firstName, lastName, phoneNumber, address));
-        sortUserList();
+    public void editCustomerInformation(int idInput, String firstName, String lastName, String phoneNumber, String address) throws IOException {
+        STORE_LOCK.writeLock().lock();
+        try {
+            Customer customer = new Customer(idInput, firstName, lastName, phoneNumber, address);
+            User user = userIndex.get(idInput);
+            if (user instanceof Customer) {
+                recordUser(customer);
+                Customer existing = (Customer) user;
+                long version = versionClock.begin();
+                try {
+                    synchronized (existing) {
+                        existing.keepPrevious(version, versionClock.oldest());
+                        existing.setFirstName(firstName);
+                        existing.setLastName(lastName);
+                        existing.setPhoneNumber(phoneNumber);
+                        existing.setAddress(address);
+                    }
+                } finally {
+                    versionClock.end(version);
+                }
+            } else {
+                saveUser(customer);
+            }
+        } finally {
+            STORE_LOCK.writeLock().unlock();
+        }
+        awaitDurable();
         System.out.println("Customer information updated.");
     }
 
 
     /**
      * This method will edit information of an employee.
-     * It will first remove the old entry and add a new one with same user ID
+     * The existing employee is updated in place, keeping its entry in the user
+     * list. A copy of the old information is kept for the store views opened
+     * before the edit.
      * @param idInput the <CODE>int</CODE> index of the user's ID
      * @param firstName a <CODE>String</CODE> representing the first name of user
      * @param lastName a <CODE>String</CODE> representing the last name of user
      * @param socialSecurityNumber an <CODE>int</CODE> representing the ssn of user
      * @param monthlySalary a <CODE>float</CODE> representing the monthly salary of user
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void editEmployeeInformation(int idInput, String firstName, String lastName, int socialSecurityNumber, float monthlySalary) {
-        userList.remove(findUserIndex(idInput));
-        userList.add(new Employee(idInput, firstName, lastName, socialSecurityNumber, monthlySalary));
-        sortUserList();
+    public void editEmployeeInformation(int idInput, String firstName, String lastName, int socialSecurityNumber, float monthlySalary) throws IOException {
+        STORE_LOCK.writeLock().lock();
+        try {
+            Employee employee = new Employee(idInput, firstName, lastName, socialSecurityNumber, monthlySalary);
+            User user = userIndex.get(idInput);
+            if (user instanceof Employee) {
+                recordUser(employee);
+                Employee existing = (Employee) user;
+                long version = versionClock.begin();
+                try {
+                    synchronized (existing) {
+                        existing.keepPrevious(version, versionClock.oldest());
+                        existing.setFirstName(firstName);
+                        existing.setLastName(lastName);
+                        existing.setSocialSecurityNumber(socialSecurityNumber);
+                        existing.setMonthlySalary(monthlySalary);
+                    }
+                } finally {
+                    versionClock.end(version);
+                }
+            } else {
+                saveUser(employee);
+            }
+        } finally {
+            STORE_LOCK.writeLock().unlock();
+        }
+        awaitDurable();
         System.out.println("Employee information updated.");
 
     }
 
     /**
-     * This method can be used to remove a item in the Arraylist of items.
+     * This method can be used to remove a item from the catalog. The item is
+     * kept in <CODE>retiredItems</CODE> while store views opened before the
+     * removal may still list it.
      *
-     * @param itemIndex an <CODE>int</CODE> that represents the Index of
-     * the item in the list that to be removed.
+     * @param item the <CODE>Item</CODE> to be removed, as returned by
+     * <CODE>findItem()</CODE>.
+     * @return false, with nothing removed, if the item has been removed
+     * meanwhile (even if another item with its ID has been added since)
+     * @throws IOException if the storage engine could not record the change, in which
+     * case it is not made, or could not make it durable
      */
-    public void removeItem(int itemIndex) {
-        itemList.remove(itemIndex);
+    public boolean removeItem(Item item) throws IOException {
+        STORE_LOCK.writeLock().lock();
+        try {
+            if (!isInCatalog(item)) {
+                return false;
+            }
+            long version = versionClock.begin();
+            try {
+                storageEngine.itemRemoved(item);
+                if (item.getRemovedVersion() == 0) {
+                    item.setRemovedVersion(version);
+                    retiredItems.add(item);
+                }
+                itemIndex.remove(itemKey(item.getIdNumber()));
+                itemKeyCatalog.remove(itemKey(item.getIdNumber()));
+                nameIndex.remove(item);
+                quantityIndex.remove(item);
+                prefixIndex.remove(item);
+                fuzzyIndex.remove(item);
+                facetIndex.remove(item);
+                itemCatalog.remove(item.getIdNumber());
+            } finally {
+                versionClock.end(version);
+            }
+            long oldest = versionClock.oldest();
+            for (Iterator<Item> retired = retiredItems.iterator(); retired.hasNext(); ) {
+                if (retired.next().getRemovedVersion() <= oldest) {
+                    retired.remove();
+                }
+            }
+        } finally {
+            STORE_LOCK.writeLock().unlock();
+        }
+        awaitDurable();
+        return true;
     }
 
     /**
-     * This method is used to retrieve the Item object from the
-     * <CODE>itemList</CODE> at a given index.
-     *
-     * @param i the index of the desired <CODE>Item</CODE> object.
-     * @return the <CODE>Item</CODE> object at the index or null if the index is
-     * invalid.
+     * Records and applies a change of quantity to the given item, provided it
+     * still has at least <CODE>required</CODE> units in stock. The check and
+     * the change are made under the item's stripe lock, so they are one
+     * atomic step; changes to items in other stripes go on in parallel.
+     * @param item the item to update
+     * @param delta the (signed) quantity to add
+     * @param required the stock the item must have for the change to be made
+     * @return false if the stock was too low or the item has been removed
+     * @throws IOException if the storage engine could not record the change
      */
-    public Item getItem(int i) {
-        if (i < itemList.size() && i >= 0) {
-            return itemList.get(i);
-        } else {
-            System.out.println("Invalid Index.");
-            return null;
+    private boolean changeQuantity(Item item, int delta, int required) throws IOException {
+        STORE_LOCK.readLock().lock();
+        try {
+            ReentrantLock lock = itemLock(item);
+            lock.lock();
+            try {
+                if (!isInCatalog(item) || item.getQuantity() < required) {
+                    return false;
+                }
+                storageEngine.quantityChanged(item, delta);
+                long version = versionClock.begin();
+                try {
+                    if (delta > 0) {
+                        // Low stock views look for items that have left
+                        // the low end of the quantityIndex here
+                        restockedItems.headMap(versionClock.oldest(), true).clear();
+                        restockedItems.put(version, item);
+                    }
+                    applyQuantity(item, item.getQuantity() + delta, version);
+                } finally {
+                    versionClock.end(version);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            STORE_LOCK.readLock().unlock();
+        }
+        awaitDurable();
+        return true;
+    }
+
+    /**
+     * Sets an item's quantity, moving it in the indexes that depend on it.
+     * Called holding the item's stripe lock.
+     * @param item the item
+     * @param quantity the new quantity
+     * @param version the version of the change
+     */
+    private static void applyQuantity(Item item, int quantity, long version) {
+        quantityIndex.quantityChanged(item, quantity);
+        facetIndex.quantityChanged(item, quantity);
+        item.setQuantity(quantity, version, versionClock.oldest());
+    }
+
+    /**
+     * Returns the lock guarding the quantity of an item. Items are spread
+     * over <CODE>ITEM_LOCKS</CODE> by ID, so sales of different items rarely
+     * wait for each other.
+     * @param item the item
+     * @return the lock
+     */
+    private static ReentrantLock itemLock(Item item) {
+        return ITEM_LOCKS[stripe(item)];
+    }
+
+    private static int stripe(Item item) {
+        return (itemKey(item.getIdNumber()).hashCode() & 0x7fffffff) % ITEM_LOCKS.length;
+    }
+
+    /**
+     * Returns true if the item is (still) the one in the catalog under its
+     * ID. Called holding a <CODE>STORE_LOCK</CODE> lock.
+     * @param item the item
+     * @return whether the item is in the catalog
+     */
+    private static boolean isInCatalog(Item item) {
+        return itemIndex.get(itemKey(item.getIdNumber())) == item;
+    }
+
+    /**
+     * Records and applies a new user. An existing user with the same ID is
+     * replaced.
+     * @param user the user to store
+     * @throws IOException if the storage engine could not record the change
+     */
+    private void saveUser(User user) throws IOException {
+        recordUser(user);
+        putUser(user);
+    }
+
+    /**
+     * Tells the storage engine about a new or edited user.
+     * @param user the user's new state
+     * @throws IOException if the storage engine could not record the change
+     */
+    private void recordUser(User user) throws IOException {
+        storageEngine.userSaved(user);
+    }
+
+    /**
+     * Puts a user in the <CODE>userCatalog</CODE> and the
+     * <CODE>userIndex</CODE>, replacing any user with the same ID. The user
+     * replaced stays reachable from the new one for the store views that may
+     * still read it.
+     * @param user the user to store
+     */
+    private static void putUser(User user) {
+        long version = versionClock.begin();
+        try {
+            user.replaces(userIndex.get(user.getId()), version, versionClock.oldest());
+            userIndex.put(user.getId(), user);
+            userCatalog.put(user.getId(), user);
+        } finally {
+            versionClock.end(version);
         }
     }
 
     /**
      * This method will add a transaction to the list, and remove the quantity for the target item.
-     * @param itemId a <CODE>String</CODE> representing the ID of item
+     * The stock is checked and reduced in one atomic step under the item's
+     * stripe lock, so registers selling the same item at the same time can
+     * never sell more than there is, while sales of other items go on in
+     * parallel. Only recording the sale is done one sale at a time.
+     * @param temp the <CODE>Item</CODE> sold, as returned by <CODE>findItem()</CODE>
      * @param saleQuantity an <CODE>int</CODE> of the quantity
      * @param customerId an <CODE>int</CODE> representing the ID of customer
      * @param employeeId an <CODE>int</CODE> representing the ID of employee
-     * @param itemIndex an <CODE>int</CODE> representing the index of item in the list, used to reduce the quantity.
+     * @return false, with nothing sold, if there is not enough stock left or
+     * the item has been removed meanwhile
+     * @throws IOException if the storage engine could not record the sale, in which
+     * case nothing is sold, or could not make it durable
      */
-    public void progressTransaction(String itemId, int saleQuantity, int customerId, int employeeId, int itemIndex) {
-        transactionList.add(new Transaction(itemId, new Date(), saleQuantity, customerId, employeeId));
-        addQuantity(itemIndex, -1*saleQuantity);
+    public boolean progressTransaction(Item temp, int saleQuantity, int customerId, int employeeId) throws IOException {
+        STORE_LOCK.readLock().lock();
+        try {
+            ReentrantLock lock = itemLock(temp);
+            lock.lock();
+            try {
+                if (!isInCatalog(temp) || temp.getQuantity() < saleQuantity) {
+                    return false;
+                }
+                Transaction transaction = new Transaction(temp.getIdNumber(), new Date(), saleQuantity, customerId, employeeId);
+                long version = recordSale(transaction, temp);
+                try {
+                    applyQuantity(temp, temp.getQuantity() - saleQuantity, version);
+                } finally {
+                    versionClock.end(version);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            STORE_LOCK.readLock().unlock();
+        }
+        awaitDurable();
+        System.out.println("Quantity updated.");
+        return true;
     }
 
     /**
-     * This method opens the database file and overwrites it with a
-     * serialized representation of all the items in the <CODE>itemList</CODE>,
-     * all users in the <CODE>userList</CODE>, all transactions in the
-     * <CODE>transactionList</CODE>, and the <CODE>userIdCounter</CODE>.
-     * This should be the last method to be called before exiting the program.
+     * This method sells every line of a cart as one unit. The stock of all
+     * the lines is checked first, and only if every item is still in the
+     * catalog with enough stock are the quantities taken and a transaction
+     * added per line, all recorded with the storage engine in one write.
+     * The stripes of all the cart's items are held throughout, so no other
+     * sale of those items can come in between.
+     * @param cart the cart to sell
+     * @param customerId an <CODE>int</CODE> representing the ID of customer
+     * @param employeeId an <CODE>int</CODE> representing the ID of employee
+     * @return false, with nothing sold, if any line has not enough stock left
+     * or its item has been removed meanwhile
+     * @throws IOException if the storage engine could not record the sale, in which
+     * case nothing is sold, or could not make it durable
+     */
+    public boolean checkout(Cart cart, int customerId, int employeeId) throws IOException {
+        List<Cart.Line> lines = cart.getLines();
+        if (lines.isEmpty()) {
+            return true;
+        }
+        // Stripes are always locked in increasing order
+        TreeSet<Integer> stripes = new TreeSet<Integer>();
+        for (Cart.Line line : lines) {
+            stripes.add(stripe(line.getItem()));
+        }
+
+        STORE_LOCK.readLock().lock();
+        try {
+            for (int stripe : stripes) {
+                ITEM_LOCKS[stripe].lock();
+            }
+            try {
+                for (Cart.Line line : lines) {
+                    if (!isInCatalog(line.getItem()) || line.getItem().getQuantity() < line.getQuantity()) {
+                        return false;
+                    }
+                }
+                Date saleDate = new Date();
+                ArrayList<Transaction> transactions = new ArrayList<Transaction>(lines.size());
+                ArrayList<Item> items = new ArrayList<Item>(lines.size());
+                for (Cart.Line line : lines) {
+                    transactions.add(new Transaction(line.getItem().getIdNumber(), saleDate, line.getQuantity(),
+                            customerId, employeeId));
+                    items.add(line.getItem());
+                }
+                long version = recordCart(transactions, items);
+                try {
+                    for (Cart.Line line : lines) {
+                        applyQuantity(line.getItem(), line.getItem().getQuantity() - line.getQuantity(), version);
+                    }
+                } finally {
+                    versionClock.end(version);
+                }
+            } finally {
+                for (int stripe : stripes.descendingSet()) {
+                    ITEM_LOCKS[stripe].unlock();
+                }
+            }
+        } finally {
+            STORE_LOCK.readLock().unlock();
+        }
+        awaitDurable();
+        System.out.println("Quantities updated.");
+        return true;
+    }
+
+    /**
+     * Waits until the changes this thread has just recorded with the storage
+     * engine are durable. Called after releasing the store's locks, so that
+     * other registers can record their changes meanwhile and have them
+     * synced in the same write.
+     * @throws IOException if the changes could not be made durable
+     */
+    private static void awaitDurable() throws IOException {
+        storageEngine.awaitDurable();
+    }
+
+    /**
+     * Records a sale with the storage engine and appends it to the history
+     * and the <CODE>transactionIndex</CODE>. Sales are recorded one at a time
+     * under <CODE>SALE_LOCK</CODE>, so all three see them in the same order.
+     * The sale's version is taken under the lock too, so versions follow the
+     * order of the history.
+     * @param transaction the sale
+     * @param item the item sold, still holding its old quantity
+     * @return the version of the sale, to be ended once the quantity is set
+     * @throws IOException if the storage engine could not record the sale
+     */
+    private static long recordSale(Transaction transaction, Item item) throws IOException {
+        synchronized (SALE_LOCK) {
+            storageEngine.saleRecorded(transaction, item);
+            long version = versionClock.begin();
+            if (transactionIndex != null) {
+                transactionIndex.add(transactionHistory.size(), transaction);
+            }
+            transactionHistory.add(transaction);
+            countTransactions(version);
+            return version;
+        }
+    }
+
+    /**
+     * Records the sales of a cart with the storage engine in one write and
+     * appends them to the history and the <CODE>transactionIndex</CODE>,
+     * with no other sale in between.
+     * @param transactions the sales
+     * @param items the item of each sale, still holding its old quantity
+     * @return the version of the sales, to be ended once the quantities are
+     * set
+     * @throws IOException if the storage engine could not record the sales
+     */
+    private static long recordCart(List<Transaction> transactions, List<Item> items) throws IOException {
+        synchronized (SALE_LOCK) {
+            storageEngine.cartRecorded(transactions, items);
+            long version = versionClock.begin();
+            for (Transaction transaction : transactions) {
+                if (transactionIndex != null) {
+                    transactionIndex.add(transactionHistory.size(), transaction);
+                }
+                transactionHistory.add(transaction);
+            }
+            countTransactions(version);
+            return version;
+        }
+    }
+
+    /**
+     * Notes the length of the history at the version of a sale, and forgets
+     * the lengths no open store view can read any more. Called holding
+     * <CODE>SALE_LOCK</CODE>.
+     * @param version the version of the sale
+     */
+    private static void countTransactions(long version) {
+        transactionCounts.put(version, transactionHistory.size());
+        transactionCounts.headMap(transactionCounts.floorKey(versionClock.oldest())).clear();
+    }
+
+    /**
+     * This method saves a snapshot of all the items in the <CODE>itemCatalog</CODE>,
+     * all users in the <CODE>userCatalog</CODE>, the <CODE>userIdCounter</CODE>
+     * and the new transactions with the storage engine.
+     * The store is only locked while a snapshot is copied, so sales can
+     * continue while the engine writes it.
      *
      * @throws IOException
      */
     public void writeDatabase() throws IOException {
-        //serialize the database
-        OutputStream file = null;
-        OutputStream buffer = null;
-        ObjectOutput output = null;
-        try {
-            file = new FileOutputStream(DATA_FILE_NAME);
-            buffer = new BufferedOutputStream(file);
-            output = new ObjectOutputStream(buffer);
+        writeDatabase(null);
+    }
+
+    /**
+     * Same as <CODE>writeDatabase()</CODE>, but reports its progress to the
+     * given listener. This method is safe to call from a background thread,
+     * which is how the GUI saves without freezing.
+     *
+     * @param listener receives progress reports, or null
+     * @return true if the database was written
+     */
+    public boolean writeDatabase(ProgressListener listener) {
+        boolean written = checkpoint(listener);
+        System.out.println("Done.");
+        return written;
+    }
 
-            output.writeObject(itemList);
-            output.writeObject(userList);
-            output.writeObject(transactionList);
-            output.writeInt(userIdCounter);
+    /**
+     * Stops the background checkpointer and closes the storage engine. Any
+     * checkpoint or change in progress is allowed to finish first, so the
+     * engine sees no change after it is closed. The store cannot be used
+     * afterwards.
+     *
+     * @throws IOException if the engine could not close its files cleanly
+     */
+    public void close() throws IOException {
+        checkpointer.stop();
+        synchronized (CHECKPOINT_LOCK) {
+            STORE_LOCK.writeLock().lock();
+            try {
+                storageEngine.close();
+            } finally {
+                STORE_LOCK.writeLock().unlock();
+            }
+        }
+    }
 
-            output.close();
-        } catch (IOException ex) {
-            System.err.println(ex.toString());
+    /**
+     * Saves a fresh snapshot with the storage engine. Only one checkpoint
+     * runs at a time.
+     *
+     * @param listener receives progress reports, or null
+     * @return true if the snapshot was saved
+     */
+    private boolean checkpoint(ProgressListener listener) {
+        synchronized (CHECKPOINT_LOCK) {
+            StoreSnapshot snapshot;
+            try {
+                report(listener, 0, "Copying store...");
+                snapshot = takeSnapshot();
+            } catch (IOException ex) {
+                System.err.println(ex.toString());
+                return false;
+            }
+            if (!storageEngine.save(snapshot, listener)) {
+                return false;
+            }
+            report(listener, 100, "Done.");
+            return true;
+        }
+    }
+
+    private static void report(ProgressListener listener, int percent, String note) {
+        if (listener != null) {
+            listener.progress(percent, note);
+        }
+    }
+
+    /**
+     * Prepares the engine for a save and copies the store, both while holding
+     * <CODE>STORE_LOCK</CODE>, so the copy matches exactly the mutations the
+     * engine recorded before the save began.
+     *
+     * @return the snapshot
+     * @throws IOException
+     */
+    private StoreSnapshot takeSnapshot() throws IOException {
+        STORE_LOCK.writeLock().lock();
+        try {
+            long logSegment = storageEngine.beginSave();
+            // An engine that keeps the items itself does not need a copy
+            ArrayList<Item> items = null;
+            if (storageEngine.savesItems()) {
+                items = new ArrayList<Item>(itemCatalog.size());
+                for (Item item : itemCatalog.values()) {
+                    items.add(item.copy());
+                }
+            }
+            ArrayList<User> users = new ArrayList<User>(userCatalog.size());
+            for (User user : userCatalog.values()) {
+                users.add(user.copy());
+            }
+            ArrayList<Transaction> transactions = transactionHistory.getUnarchived();
+            return new StoreSnapshot(items, users, transactions,
+                    transactionHistory.getArchivedCount() + transactions.size(), userIdCounter, logSegment);
         } finally {
-            close(file);
+            STORE_LOCK.writeLock().unlock();
         }
-        System.out.println("Done.");
     }
 
     /**
-     * The method opens the database file and initializes the <CODE>itemList</CODE>,
-     * <CODE>userList</CODE>, <CODE>transactionList</CODE> and the <CODE>userIdCounter</CODE>
-     * with their contents. If no such file exists, then one is created.
-     * The contents of the file are "loaded" into the itemList ArrayList in no 
-     * particular order. The file is then closed during the duration of the 
-     * program until <CODE>writeDatabase()</CODE> is called.
+     * The method creates the storage engine and has it load the store,
+     * initializing the <CODE>itemCatalog</CODE>, <CODE>userCatalog</CODE> and the
+     * <CODE>userIdCounter</CODE>, and opening the <CODE>transactionHistory</CODE>
+     * without reading it. The background checkpointer is then started; if the
+     * engine already wants a save (for example after migrating an older
+     * database file) one is made right away.
      *
      * @throws IOException
      */
@@ -471,44 +1484,71 @@ public class HardwareStore {
 
         System.out.print("Reading database...");
 
-        File dataFile = new File(DATA_FILE_NAME);
+        storageEngine = createStorageEngine();
+        StoreSnapshot snapshot = storageEngine.load();
+        itemCatalog = new ConcurrentSkipListMap<String, Item>();
+        itemIndex = new ConcurrentHashMap<String, Item>(snapshot.getItems().size() * 2);
+        itemKeyCatalog = new ConcurrentSkipListMap<String, Item>();
+        for (Item item : snapshot.getItems()) {
+            itemCatalog.put(item.getIdNumber(), item);
+            itemIndex.put(itemKey(item.getIdNumber()), item);
+            itemKeyCatalog.put(itemKey(item.getIdNumber()), item);
+        }
+        nameIndex = new TrigramIndex(itemCatalog.values());
+        quantityIndex = new QuantityIndex(itemCatalog.values());
+        prefixIndex = new PrefixIndex(itemCatalog.values());
+        fuzzyIndex = new FuzzyIndex(itemCatalog.values());
+        facetIndex = new FacetIndex(itemCatalog.values());
+        userCatalog = new ConcurrentSkipListMap<Integer, User>();
+        userIndex = new ConcurrentHashMap<Integer, User>(snapshot.getUsers().size() * 2);
+        for (User user : snapshot.getUsers()) {
+            userCatalog.put(user.getId(), user);
+            userIndex.put(user.getId(), user);
+        }
+        userIdCounter = snapshot.getUserIdCounter();
+        transactionHistory = storageEngine.getTransactionHistory();
 
-        // Try to read existing dealership database from a file
-        InputStream file = null;
-        InputStream buffer = null;
-        ObjectInput input = null;
-        try {
-            if (!dataFile.exists()) {
-                System.out.println("Data file does not exist. Creating a new database.");
-                itemList = new ArrayList<Item>();
-                userList = new ArrayList<User>();
-                transactionList = new ArrayList<Transaction>();
-                userIdCounter = 1;
-                return;
+        versionClock = new VersionClock();
+        retiredItems = new ConcurrentLinkedQueue<Item>();
+        restockedItems = new ConcurrentSkipListMap<Long, Item>();
+        transactionCounts = new ConcurrentSkipListMap<Long, Long>();
+        transactionCounts.put(0L, transactionHistory.size());
+
+        checkpointer = new Checkpointer(storageEngine, new Runnable() {
+            @Override
+            public void run() {
+                checkpoint(null);
             }
-            file = new FileInputStream(dataFile);
-            buffer = new BufferedInputStream(file);
-            input = new ObjectInputStream(buffer);
-
-            // Read serialized data
-            itemList = (ArrayList<Item>) input.readObject();
-            userList = (ArrayList<User>) input.readObject();
-            transactionList = (ArrayList<Transaction>) input.readObject();
-            userIdCounter = input.readInt();
-
-            input.close();
-        } catch (ClassNotFoundException ex) {
-            System.err.println(ex.toString());
-        } catch (FileNotFoundException ex) {
-            System.err.println("Database file not found.");
-        } catch (IOException ex) {
-            System.err.println(ex.toString());
-        } finally {
-            close(file);
+        });
+        checkpointer.start();
+        if (storageEngine.isSaveDue()) {
+            checkpoint(null);
         }
         System.out.println("Done.");
     }
 
+    /**
+     * Creates the storage engine named by the "hardwarestore.engine" system
+     * property.
+     *
+     * @return the storage engine
+     * @throws IOException if the property names no known engine
+     */
+    private static StorageEngine createStorageEngine() throws IOException {
+        File directory = new File(".");
+        if ("file".equals(ENGINE)) {
+            return new FileStorageEngine(directory, CHECKPOINT_LOG_BYTES, CHECKPOINT_LOG_AGE_MILLIS, COMMIT_WINDOW_MILLIS);
+        } else if ("mapped".equals(ENGINE)) {
+            return new MappedStorageEngine(directory, CHECKPOINT_LOG_BYTES, CHECKPOINT_LOG_AGE_MILLIS, COMMIT_WINDOW_MILLIS);
+        } else if ("sql".equals(ENGINE)) {
+            return new SqlStorageEngine(JDBC_URL);
+        } else if ("memory".equals(ENGINE)) {
+            return new InMemoryStorageEngine();
+        } else {
+            throw new IOException("Unknown storage engine: " + ENGINE);
+        }
+    }
+
     /**
      * Auxiliary convenience method used to close a file and handle possible
      * exceptions that may occur.
@@ -525,37 +1565,4 @@ public class HardwareStore {
             System.err.println(ex.toString());
         }
     }
-
-    /**
-     * This method will sort the item list, based on the item ID.
-     */
-    public static void sortItemList() {
-        itemList.sort(new Comparator<Item>() {
-            @Override
-            public int compare(Item o1, Item o2) {
-                if (o1.getIdNumber().compareTo(o2.getIdNumber())>0) {
-                    return 1;
-                } else {
-                    return -1;
-                }
-            }
-        });
-
-    }
-    /**
-     * This method will sort the user list, based on the user ID.
-     */
-    public static void sortUserList() {
-        userList.sort(new Comparator<User>() {
-            @Override
-            public int compare(User o1, User o2) {
-                if (o1.getId()>o2.getId()) {
-                    return 1;
-                } else {
-                    return -1;
-                }
-            }
-        });
-
-    }
 }
@@ -5,25 +5,61 @@
  */
 package hardwarestoregui;
 
+import hardwarestoregui.format.TableWriter;
 import hardwarestoregui.items.Item;
 import hardwarestoregui.users.User;
+import hardwarestoregui.view.ItemTableModel;
+import hardwarestoregui.view.StoreWorker;
+import hardwarestoregui.view.TransactionTableModel;
+import hardwarestoregui.view.UserTableModel;
+import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Scanner;
 import javax.swing.BoxLayout;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.DefaultListModel;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 import java.util.logging.*;
 /**
  * This is the main class of the Hardware Store database manager. It provides a
  * console for a user to use the 5 main commands.
  *
+ * The dialogs run on the event dispatch thread, but every search, report,
+ * update and save of the store runs on a <CODE>StoreWorker</CODE>, which
+ * shows its result once it is done, so the menu stays responsive while the
+ * store is busy. Only single lookups by ID, which are answered straight from
+ * the store's hash indexes, are made directly.
+ *
  * @author Andrew Hyatt
  * @author Zachary King
  */
@@ -34,6 +70,7 @@ public class MainApp {
     private static final Scanner CONSOLE_INPUT = new Scanner(System.in); // Used to read from System's standard input
     private static final JFrame frame = new JFrame();
     private static final Logger logger = Logger.getLogger(MainApp.class.getName());
+    private static final int SUGGESTION_COUNT = 10; // Completions shown while searching
     /**
      * Default constructor. Initializes a new object of type HardwareStore
      *
@@ -41,6 +78,18 @@ public class MainApp {
      */
     public MainApp() throws IOException {
         hardwareStore = new HardwareStore();
+        // Close the store when the program exits, so the storage engine can
+        // finish its files
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    hardwareStore.close();
+                } catch (IOException ex) {
+                    System.err.println(ex.toString());
+                }
+            }
+        }, "Store shutdown"));
     }
     
     /**
@@ -58,16 +107,118 @@ public class MainApp {
     
     //Function 1
     /**
-     * This method shows all items in the inventory.
+     * This method shows all items in the inventory, in a table sorted by ID.
+     * Clicking the Item ID or Quantity header sorts by that column, and
+     * typing in the filter field only shows the items whose name contains
+     * the text. Both are answered by the store's indexes, and the table only
+     * reads the rows on screen, so the view opens quickly however many items
+     * there are. The items are fetched on a background worker; when the
+     * filter changes again before a fetch finishes, its result is dropped.
      */
     public void showAllItems() {
-        // We need to sort the item list first
-        logger.log(Level.INFO, "User selected to display items. Sorting list of items before displaying...");
-        HardwareStore.sortItemList();
-        logger.log(Level.INFO, "Finished sorting. Displaying items...");
-        JOptionPane.showMessageDialog(frame, hardwareStore.getAllItemsFormatted());
+        logger.log(Level.INFO, "User selected to display items. Displaying items...");
+        final ItemTableModel model = new ItemTableModel();
+        final JTable table = new JTable(model);
+        final JTextField filter = new JTextField(20);
+        final boolean[] byQuantity = new boolean[1];
+        final int[] requests = new int[1];
+        final Runnable refresh = new Runnable() {
+            @Override
+            public void run() {
+                final String name = filter.getText().trim();
+                final boolean sortByQuantity = byQuantity[0];
+                final int request = ++requests[0];
+                new StoreWorker<List<Item>>(frame) {
+                    @Override
+                    protected List<Item> doInBackground() {
+                        if (name.isEmpty()) {
+                            // The catalog is always sorted by ID
+                            return sortByQuantity ? hardwareStore.getAllItemsByQuantity() : hardwareStore.getAllItems();
+                        }
+                        List<Item> items = hardwareStore.getItemsByName(name);
+                        if (sortByQuantity) {
+                            // Sales keep changing the quantities, so sort on
+                            // the ones read once here
+                            final IdentityHashMap<Item, Integer> stock = new IdentityHashMap<Item, Integer>();
+                            for (Item item : items) {
+                                stock.put(item, item.getQuantity());
+                            }
+                            Collections.sort(items, new Comparator<Item>() {
+                                @Override
+                                public int compare(Item o1, Item o2) {
+                                    int byStock = Integer.compare(stock.get(o1), stock.get(o2));
+                                    return byStock != 0 ? byStock : o1.getIdNumber().compareTo(o2.getIdNumber());
+                                }
+                            });
+                        }
+                        return items;
+                    }
+
+                    @Override
+                    protected void succeeded(List<Item> items) {
+                        if (request == requests[0]) {
+                            model.setItems(items);
+                        }
+                    }
+                }.start();
+            }
+        };
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int column = table.convertColumnIndexToModel(table.columnAtPoint(e.getPoint()));
+                if (column == ItemTableModel.ID_COLUMN || column == ItemTableModel.QUANTITY_COLUMN) {
+                    byQuantity[0] = column == ItemTableModel.QUANTITY_COLUMN;
+                    refresh.run();
+                }
+            }
+        });
+        filter.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh.run();
+            }
+        });
+        refresh.run();
+
+        JPanel controls = new JPanel();
+        controls.add(new JLabel("Name contains:"));
+        controls.add(filter);
+        controls.add(new JLabel("Click the Item ID or Quantity header to sort."));
+        showTable("Items", table, controls);
         logger.log(Level.INFO, "Done displaying items.");
     }
+
+    /**
+     * Shows a table in a window of its own. The window does not block the
+     * menu, so several views can be open at once.
+     *
+     * @param title the window title
+     * @param table the table
+     * @param controls a panel shown above the table, or null
+     */
+    private void showTable(String title, JTable table, JPanel controls) {
+        JDialog dialog = new JDialog(frame, title, false);
+        table.setFillsViewportHeight(true);
+        dialog.setLayout(new BorderLayout());
+        if (controls != null) {
+            dialog.add(controls, BorderLayout.NORTH);
+        }
+        dialog.add(new JScrollPane(table), BorderLayout.CENTER);
+        dialog.setSize(800, 500);
+        dialog.setLocationRelativeTo(frame);
+        dialog.setVisible(true);
+    }
     
     //Function 2
     /**
@@ -98,8 +249,8 @@ public class MainApp {
         }
 
         logger.info("Valid ID entered...");
-        int itemIndex = hardwareStore.findItemIndex(idNumber);
-        if (itemIndex != -1) { // If item exists in the database
+        Item item = hardwareStore.findItem(idNumber);
+        if (item != null) { // If item exists in the database
             JOptionPane.showMessageDialog(
                     null,
                     "Item found in database");
@@ -141,8 +292,24 @@ public class MainApp {
             }
 
             logger.info("Adding given quantity...");
-            hardwareStore.addQuantity(itemIndex, quantity);
-            logger.info("Quantity successfully updated.");
+            final Item stockedItem = item;
+            final int addedQuantity = quantity;
+            new StoreWorker<Boolean>(frame) {
+                @Override
+                protected Boolean doInBackground() throws IOException {
+                    return hardwareStore.addQuantity(stockedItem, addedQuantity);
+                }
+
+                @Override
+                protected void succeeded(Boolean added) {
+                    if (added) {
+                        logger.info("Quantity successfully updated.");
+                    } else {
+                        JOptionPane.showMessageDialog(frame, "The item has been removed meanwhile.");
+                        logger.warning("Item removed before its quantity was updated.");
+                    }
+                }
+            }.start();
         } else {
             // If it reaches here, the item does not exist. We need to add new one.
             logger.info("Item does not exist in database. Preparing to input name of the item.");
@@ -259,8 +426,17 @@ public class MainApp {
                                 logger.severe("Invalid input entered, not of type integer.");
                                 continue;
                             }
-                            hardwareStore.addNewSmallHardwareItem(idNumber, name, quantity, price, category);
-                            logger.info("Small HardwareItem successfully added to database.");
+                            final String newId = idNumber;
+                            final String newName = name;
+                            final int newQuantity = quantity;
+                            final float newPrice = price;
+                            final String newCategory = category;
+                            addItemInBackground(new ItemAddition() {
+                                @Override
+                                public boolean run() throws IOException {
+                                    return hardwareStore.addNewSmallHardwareItem(newId, newName, newQuantity, newPrice, newCategory);
+                                }
+                            }, "Small HardwareItem successfully added to database.");
                             return;
 
                         case 2:
@@ -302,8 +478,19 @@ public class MainApp {
                                 continue;
                             }
                             logger.info("Type of appliance entered successfully...Adding new appliance...");
-                            hardwareStore.addNewAppliance(idNumber, name, quantity, price, brand, type);
-                            logger.info("New appliance successfully added to the database.");
+                            final String applianceId = idNumber;
+                            final String applianceName = name;
+                            final int applianceQuantity = quantity;
+                            final float appliancePrice = price;
+                            final String applianceBrand = brand;
+                            final String applianceType = type;
+                            addItemInBackground(new ItemAddition() {
+                                @Override
+                                public boolean run() throws IOException {
+                                    return hardwareStore.addNewAppliance(applianceId, applianceName, applianceQuantity,
+                                            appliancePrice, applianceBrand, applianceType);
+                                }
+                            }, "New appliance successfully added to the database.");
                             return;
                         default:
                             JOptionPane.showMessageDialog(null, "Invalid input");
@@ -322,6 +509,70 @@ public class MainApp {
 
     }
 
+    /**
+     * A store update run by <CODE>updateInBackground()</CODE>.
+     */
+    private interface StoreUpdate {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs a store update on a background worker and logs the given message
+     * once it has been made. If the store cannot record the update or make
+     * it durable, the error is shown instead.
+     *
+     * @param update the update
+     * @param message the message logged when it is done
+     */
+    private void updateInBackground(final StoreUpdate update, final String message) {
+        new StoreWorker<Void>(frame) {
+            @Override
+            protected Void doInBackground() throws IOException {
+                update.run();
+                return null;
+            }
+
+            @Override
+            protected void succeeded(Void result) {
+                logger.info(message);
+            }
+        }.start();
+    }
+
+    /**
+     * An item addition run by <CODE>addItemInBackground()</CODE>.
+     */
+    private interface ItemAddition {
+        boolean run() throws IOException;
+    }
+
+    /**
+     * Runs an item addition on a background worker and logs the given
+     * message once the item has been added. If another item with the same
+     * ID was added meanwhile, nothing is added and the user is told so.
+     *
+     * @param addition the addition
+     * @param message the message logged when it is done
+     */
+    private void addItemInBackground(final ItemAddition addition, final String message) {
+        new StoreWorker<Boolean>(frame) {
+            @Override
+            protected Boolean doInBackground() throws IOException {
+                return addition.run();
+            }
+
+            @Override
+            protected void succeeded(Boolean added) {
+                if (added) {
+                    logger.info(message);
+                } else {
+                    JOptionPane.showMessageDialog(frame, "An item with this ID already exists.");
+                    logger.warning("Item with this ID added meanwhile, not added again.");
+                }
+            }
+        }.start();
+    }
+
     //Function 3
     /**
      * This method will remove the item with given ID.
@@ -344,8 +595,8 @@ public class MainApp {
             return;
         }
 
-        int itemIndex = hardwareStore.findItemIndex(idNumber);
-        if (itemIndex == -1) {
+        final Item item = hardwareStore.findItem(idNumber);
+        if (item == null) {
             JOptionPane.showMessageDialog(null, "Item does not exist.\n"
                     + "Will return to main menu.");
             logger.warning("Item ID entered does not exist, nothing to delete.");
@@ -362,9 +613,23 @@ public class MainApp {
             if (input.equals("YES")) {
                 JOptionPane.showMessageDialog(null, "\033[0m" + "User typed " + input + ". Confirm: Item will be removed.");
                 logger.info("User confirmed deletion, preparing to delete item...");
-                hardwareStore.removeItem(itemIndex);
-                 JOptionPane.showMessageDialog(null, "\033[0m" + "Item removed from inventory.");
-                 logger.info("Item successfully removed.");
+                new StoreWorker<Boolean>(frame) {
+                    @Override
+                    protected Boolean doInBackground() throws IOException {
+                        return hardwareStore.removeItem(item);
+                    }
+
+                    @Override
+                    protected void succeeded(Boolean removed) {
+                        if (removed) {
+                            JOptionPane.showMessageDialog(null, "\033[0m" + "Item removed from inventory.");
+                            logger.info("Item successfully removed.");
+                        } else {
+                            JOptionPane.showMessageDialog(null, "\033[0m" + "Item no longer in the database.");
+                            logger.warning("Item removed meanwhile, nothing removed.");
+                        }
+                    }
+                }.start();
             } else {
                 JOptionPane.showMessageDialog(null, "\033[0m" + "User typed " + input + ". Abort: Item will not be removed.");
                 logger.info("User decided not to remove item from database, nothing changed.");
@@ -377,34 +642,171 @@ public class MainApp {
     /**
      * This method can search item by a given name (part of name.
      * Case-insensitive.) Will display all items with the given name.
+     * Matching items are suggested while the name is typed.
      */
     public void searchItemByName() {
         logger.info("User selection option 4, searching for item in database.");
-        String name = JOptionPane.showInputDialog(
-                frame, 
-                "Please input the name of item.",
-                "Item Search", 
-                JOptionPane.INFORMATION_MESSAGE);
+        final String name = showSearchDialog();
+        if (name == null) {
+            logger.info("Search cancelled.");
+            return;
+        }
 
         logger.info("Valid name entered, preparing to display matching items...");
-        String output = hardwareStore.getMatchingItemsByName(name);
-        if (output == null) {
-            JOptionPane.showMessageDialog(null, "Item not found with: " + name + ".");
-            logger.info("No item(s) to display with that name (or part of name).");
-        } else {
-            JOptionPane.showMessageDialog(null, output);
-            logger.info("Item(s) that match that name (or part of name) displayed successfully.");
-        }
+        new StoreWorker<String[]>(frame) {
+            @Override
+            protected String[] doInBackground() {
+                String output = hardwareStore.getMatchingItemsByName(name);
+                if (output != null) {
+                    return new String[] {output, null};
+                }
+                // Nothing contains the name as typed; it may be misspelled
+                return new String[] {null, hardwareStore.getFuzzyMatchingItemsByName(name)};
+            }
+
+            @Override
+            protected void succeeded(String[] result) {
+                if (result[0] != null) {
+                    JOptionPane.showMessageDialog(null, result[0]);
+                    logger.info("Item(s) that match that name (or part of name) displayed successfully.");
+                } else if (result[1] == null) {
+                    JOptionPane.showMessageDialog(null, "Item not found with: " + name + ".");
+                    logger.info("No item(s) to display with that name (or part of name).");
+                } else {
+                    JOptionPane.showMessageDialog(null, "Item not found with: " + name + ". Did you mean:\n" + result[1]);
+                    logger.info("No exact match, similar item(s) displayed.");
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Shows a search field with a list of completions that is updated on
+     * every keystroke. Completions are looked up on a background worker, and
+     * only the ones for the latest text are shown. Choosing a completion puts
+     * that item's name in the field.
+     *
+     * @return the text to search for, or null if the search was cancelled.
+     */
+    private String showSearchDialog() {
+        final JDialog dialog = new JDialog(frame, "Item Search", true);
+        final JTextField field = new JTextField(30);
+        final DefaultListModel<Item> suggestions = new DefaultListModel<Item>();
+        final JList<Item> list = new JList<Item>(suggestions);
+        final String[] query = new String[1];
+        final int[] requests = new int[1];
+
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                Item item = (Item) value;
+                return super.getListCellRendererComponent(list, item.getIdNumber() + "  " + item.getName(),
+                        index, isSelected, cellHasFocus);
+            }
+        });
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                update();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                update();
+            }
+
+            private void update() {
+                final String prefix = field.getText();
+                final int request = ++requests[0];
+                new StoreWorker<List<Item>>(dialog) {
+                    @Override
+                    protected List<Item> doInBackground() {
+                        return hardwareStore.getCompletions(prefix, SUGGESTION_COUNT);
+                    }
+
+                    @Override
+                    protected void succeeded(List<Item> items) {
+                        if (request != requests[0]) {
+                            return;
+                        }
+                        suggestions.clear();
+                        for (Item item : items) {
+                            suggestions.addElement(item);
+                        }
+                    }
+                }.start();
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                Item item = list.getSelectedValue();
+                if (item != null) {
+                    field.setText(item.getName());
+                    field.requestFocusInWindow();
+                }
+            }
+        });
+        ActionListener search = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                query[0] = field.getText();
+                dialog.dispose();
+            }
+        };
+        field.addActionListener(search);
+        JButton searchButton = new JButton("Search");
+        searchButton.addActionListener(search);
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                dialog.dispose();
+            }
+        });
+
+        JPanel top = new JPanel(new BorderLayout());
+        top.add(new JLabel("Please input the name of item."), BorderLayout.NORTH);
+        top.add(field, BorderLayout.CENTER);
+        JPanel buttons = new JPanel();
+        buttons.add(searchButton);
+        buttons.add(cancelButton);
+        dialog.setLayout(new BorderLayout());
+        dialog.add(top, BorderLayout.NORTH);
+        dialog.add(new JScrollPane(list), BorderLayout.CENTER);
+        dialog.add(buttons, BorderLayout.SOUTH);
+        dialog.setSize(400, 300);
+        dialog.setLocationRelativeTo(frame);
+        dialog.setVisible(true);
+        return query[0];
     }
 
     //Function 5
     /**
-     * This method shows all users in the system.
+     * This method shows all users in the system, in a table sorted by ID.
      */
     public void showAllUsers() {
         logger.info("User selected option 5, display all users in the database.");
-        JOptionPane.showMessageDialog(null, hardwareStore.getAllUsersFormatted());
-        logger.info("Users successfully displayed.");
+        new StoreWorker<List<User>>(frame) {
+            @Override
+            protected List<User> doInBackground() {
+                return hardwareStore.getAllUsers();
+            }
+
+            @Override
+            protected void succeeded(List<User> users) {
+                UserTableModel model = new UserTableModel();
+                model.setUsers(users);
+                showTable("Users", new JTable(model), null);
+                logger.info("Users successfully displayed.");
+            }
+        }.start();
     }    
     //Function 6
     /**
@@ -497,8 +899,16 @@ public class MainApp {
                     break;
                 }
                 logger.info("Adding employee to database...");
-                hardwareStore.addEmployee(firstName,lastName, socialSecurityNumber, monthlySalary);
-                logger.info("Employee added to database.");
+                final String employeeFirstName = firstName;
+                final String employeeLastName = lastName;
+                final int employeeSsn = socialSecurityNumber;
+                final float employeeSalary = monthlySalary;
+                updateInBackground(new StoreUpdate() {
+                    @Override
+                    public void run() throws IOException {
+                        hardwareStore.addEmployee(employeeFirstName, employeeLastName, employeeSsn, employeeSalary);
+                    }
+                }, "Employee added to database.");
             }
          });
             
@@ -508,27 +918,29 @@ public class MainApp {
             public void actionPerformed(ActionEvent event)
             {
                 // Add Customer
-                String firstName = "";
-                String lastName = "";
-                firstName=JOptionPane.showInputDialog(
+                final String firstName=JOptionPane.showInputDialog(
                     frame, 
                     "Please input the first name (String):", 
                     JOptionPane.INFORMATION_MESSAGE);
-                lastName=JOptionPane.showInputDialog(
+                final String lastName=JOptionPane.showInputDialog(
                     frame, 
                     "Please input the last name (String):", 
                     JOptionPane.INFORMATION_MESSAGE);
-                String phoneNumber=JOptionPane.showInputDialog(
+                final String phoneNumber=JOptionPane.showInputDialog(
                     frame, 
                     "Please input the phone number (String):", 
                     JOptionPane.INFORMATION_MESSAGE);
-                String address=JOptionPane.showInputDialog(
+                final String address=JOptionPane.showInputDialog(
                     frame, 
                     "Please input the address (String):", 
                     JOptionPane.INFORMATION_MESSAGE);
                 logger.info("Adding customer to database...");
-                hardwareStore.addCustomer(firstName, lastName, phoneNumber, address);
-                logger.info("Customer added to database.");
+                updateInBackground(new StoreUpdate() {
+                    @Override
+                    public void run() throws IOException {
+                        hardwareStore.addCustomer(firstName, lastName, phoneNumber, address);
+                    }
+                }, "Customer added to database.");
             }
          }); 
             buttonFrame.setLayout(new BoxLayout(buttonFrame.getContentPane(), BoxLayout.PAGE_AXIS));
@@ -635,8 +1047,18 @@ public class MainApp {
             
             }
             logger.info("Adding new employee info to database...");
-            hardwareStore.editEmployeeInformation(idInput, firstName,lastName, socialSecurityNumber, monthlySalary);
-            logger.info("Employee info successfully added.");
+            final int employeeId = idInput;
+            final String employeeFirstName = firstName;
+            final String employeeLastName = lastName;
+            final int employeeSsn = socialSecurityNumber;
+            final float employeeSalary = monthlySalary;
+            updateInBackground(new StoreUpdate() {
+                @Override
+                public void run() throws IOException {
+                    hardwareStore.editEmployeeInformation(employeeId, employeeFirstName, employeeLastName,
+                            employeeSsn, employeeSalary);
+                }
+            }, "Employee info successfully added.");
             return;
 
         } else {
@@ -650,61 +1072,87 @@ public class MainApp {
                 frame, 
                 "Please input the last name (String):", 
                 JOptionPane.INFORMATION_MESSAGE);
-            String phoneNumber=JOptionPane.showInputDialog(
+            final String phoneNumber=JOptionPane.showInputDialog(
                 frame, 
                 "Please input the phone number (String):", 
                 JOptionPane.INFORMATION_MESSAGE);
-            String address=JOptionPane.showInputDialog(
+            final String address=JOptionPane.showInputDialog(
                 frame, 
                 "Please input the address (String):", 
                 JOptionPane.INFORMATION_MESSAGE);
             logger.info("Adding customer info to database...");
-            hardwareStore.addCustomer(firstName, lastName, phoneNumber, address);
-            logger.info("Customer info successfully added to database.");
+            final String customerFirstName = firstName;
+            final String customerLastName = lastName;
+            updateInBackground(new StoreUpdate() {
+                @Override
+                public void run() throws IOException {
+                    hardwareStore.addCustomer(customerFirstName, customerLastName, phoneNumber, address);
+                }
+            }, "Customer info successfully added to database.");
         return;
         }
     }
 
     //Function 8
     /**
-     * This method will lead user to complete a transaction.
+     * This method will lead user to complete a transaction. Any number of
+     * items can be sold in one transaction: they are collected in a
+     * <CODE>Cart</CODE> and sold together, or not at all if one of them has
+     * run out meanwhile.
      */
     public void finishTransaction(){
         String itemID = "";
-        int itemIndex = 0;
+        Item tempItem = null;
         int saleQuantity = 0;
-        //Get the item ID. Will not break unless got a valid input.
+        final Cart cart = new Cart();
+        //Get the items. Will not break until the user leaves the ID empty.
         while (true) {
             itemID=JOptionPane.showInputDialog(
                 frame, 
-                "Please input the ID of item", 
+                cart.isEmpty() ? "Please input the ID of item"
+                        : "Please input the ID of the next item, or leave it empty to finish the sale", 
                 JOptionPane.INFORMATION_MESSAGE);
-            itemIndex = hardwareStore.findItemIndex(itemID);
-            if (itemIndex == -1) {
+            if (!cart.isEmpty() && (itemID == null || itemID.trim().isEmpty())) {
+                break;
+            }
+            tempItem = hardwareStore.findItem(itemID);
+            if (tempItem == null) {
+                if (!cart.isEmpty()) {
+                    JOptionPane.showMessageDialog(frame, "Item not found.");
+                    logger.warning("Item not in database.");
+                    continue;
+                }
                 JOptionPane.showMessageDialog(frame, "Item not found. Will return to main menu.");
                 logger.warning("Item not in database, returning to main menu.");
                 return;
             } 
             else {
-                Item tempItem = hardwareStore.findItem(itemID);
                 logger.info("Item found in database.");
+                // Units already in the cart are not available again
+                int available = tempItem.getQuantity() - cart.getQuantity(tempItem);
                 try {
                     saleQuantity = Integer.parseInt(JOptionPane.showInputDialog(
                             frame, 
                             "Please input the amount of items sold in this transaction (int)" +
-                            "Maximum number: " + tempItem.getQuantity(), 
+                            "Maximum number: " + available, 
                     JOptionPane.INFORMATION_MESSAGE));
                         if (saleQuantity <= 0) {
                             JOptionPane.showMessageDialog(frame, "Invalid input: must be greater than 0.");
                             logger.warning("Invalid input, quantity must be greater than 0.");
                             continue;
                         } 
-                        else if (saleQuantity > tempItem.getQuantity()) {
+                        else if (saleQuantity > available) {
                             JOptionPane.showMessageDialog(frame, "Invalid input: Number too big. Transaction cannot progress.");
                             logger.warning("Invalid input, can't sell more than in stock.");
                         continue;
                         }
-                    break;
+                    try {
+                        cart.add(tempItem, saleQuantity);
+                    } catch (IllegalArgumentException ex) {
+                        JOptionPane.showMessageDialog(frame, ex.getMessage());
+                        logger.warning(ex.getMessage());
+                    }
+                    continue;
 
                 } catch (Exception e) {
                     JOptionPane.showMessageDialog(frame, "Amount of items sold input invalid: not an integer");
@@ -723,11 +1171,12 @@ public class MainApp {
                 frame, 
                 "Please input the id of the employee.", 
                 JOptionPane.INFORMATION_MESSAGE));
-                if (hardwareStore.findUserIndex(employeeID) == -1) {
+                User employee = hardwareStore.findUser(employeeID);
+                if (employee == null) {
                     JOptionPane.showMessageDialog(frame, "User not found.");
                     logger.warning("Not a user.");
                     continue;
-                } else if (!hardwareStore.findUser(employeeID).isEmployee) {
+                } else if (!employee.isEmployee) {
                     JOptionPane.showMessageDialog(frame, "This user is not an employee.");
                     logger.warning("User not an employee.");
                 }
@@ -751,12 +1200,13 @@ public class MainApp {
                 frame, 
                 "Please input the id of the customer.", 
                 JOptionPane.INFORMATION_MESSAGE));
-                if (hardwareStore.findUserIndex(customerID) == -1) {
+                User customer = hardwareStore.findUser(customerID);
+                if (customer == null) {
                     JOptionPane.showMessageDialog(frame, "User not found.");
                     logger.warning("User not found.");
                     continue;
                 } 
-                else if (hardwareStore.findUser(customerID).isEmployee) {
+                else if (customer.isEmployee) {
                     JOptionPane.showMessageDialog(frame, "This user is not a customer.");
                     logger.warning("User is not a customer.");
                 } 
@@ -773,32 +1223,253 @@ public class MainApp {
             }
         }
         logger.info("Completing transaction...");
-        hardwareStore.progressTransaction(itemID, saleQuantity, customerID, employeeID, itemIndex);
-        JOptionPane.showMessageDialog(frame, "Transaction complete.");
-        logger.info("Transaction completed.");
+        final int customerId = customerID;
+        final int employeeId = employeeID;
+        new StoreWorker<Boolean>(frame) {
+            @Override
+            protected Boolean doInBackground() throws IOException {
+                return hardwareStore.checkout(cart, customerId, employeeId);
+            }
+
+            @Override
+            protected void succeeded(Boolean sold) {
+                // The stock is checked again as the sale is made; another
+                // register may have sold it in the meantime
+                if (!sold) {
+                    JOptionPane.showMessageDialog(frame, "Not enough stock left. Transaction cannot progress.");
+                    logger.warning("Stock sold out before the transaction completed.");
+                    return;
+                }
+                JOptionPane.showMessageDialog(frame, "Transaction complete.");
+                logger.info("Transaction completed.");
+            }
+        }.start();
 
     }
 
     //Function 9
     /**
-     * This function will output a list of all transactions in database.
+     * This function will show all transactions in database, in a table that
+     * can be narrowed to one item, customer or employee through the store's
+     * transaction index. The table reads a transaction from the history only
+     * when its row comes into view, so it opens straight away however long
+     * the history is. Index lookups and reads run on background workers.
      */
     public void showAllTransactions(){
         logger.info("Printing transactions output...");
-        JOptionPane.showMessageDialog(frame, hardwareStore.getAllTransactionsFormatted());
+        final TransactionTableModel model = new TransactionTableModel(hardwareStore);
+        final JComboBox<String> filter = new JComboBox<String>(new String[] {"All", "Item ID", "Customer ID", "Employee ID"});
+        final JTextField value = new JTextField(10);
+        final JCheckBox newestFirst = new JCheckBox("Newest first");
+        final JLabel count = new JLabel();
+        ActionListener apply = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                final String text = value.getText().trim();
+                final int selection = filter.getSelectedIndex();
+                if (selection == 0) {
+                    model.showAll();
+                    count.setText(model.getRowCount() + " transaction(s)");
+                    return;
+                }
+                final int id;
+                try {
+                    id = selection == 1 ? 0 : Integer.parseInt(text);
+                } catch (NumberFormatException ex) {
+                    JOptionPane.showMessageDialog(frame, "Please input a valid ID (integer).");
+                    return;
+                }
+                new StoreWorker<long[]>(frame) {
+                    @Override
+                    protected long[] doInBackground() {
+                        switch (selection) {
+                            case 1:
+                                return hardwareStore.getTransactionPositionsByItem(text);
+                            case 2:
+                                return hardwareStore.getTransactionPositionsByCustomer(id);
+                            default:
+                                return hardwareStore.getTransactionPositionsByEmployee(id);
+                        }
+                    }
+
+                    @Override
+                    protected void succeeded(long[] positions) {
+                        model.showPositions(positions);
+                        count.setText(model.getRowCount() + " transaction(s)");
+                    }
+                }.start();
+            }
+        };
+        JButton show = new JButton("Show");
+        show.addActionListener(apply);
+        value.addActionListener(apply);
+        newestFirst.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                model.setNewestFirst(newestFirst.isSelected());
+            }
+        });
+        count.setText(model.getRowCount() + " transaction(s)");
+
+        JPanel controls = new JPanel();
+        controls.add(new JLabel("Show:"));
+        controls.add(filter);
+        controls.add(value);
+        controls.add(show);
+        controls.add(newestFirst);
+        controls.add(count);
+        showTable("Transactions", new JTable(model), controls);
         logger.info("Transactions output successfully printed.");
     }
 
     //Function 10
     /**
      * These method is called to save the database before exit the system.
-     * @throws IOException
+     * The database is written on a background thread, so the menu stays
+     * usable (and sales keep going) while it is saved. Progress is shown in a
+     * progress monitor and the result in a dialog once the save finishes.
+     * Cancelling the save keeps the database file and log as they were, so
+     * nothing is lost; the next save starts over.
      */
-    public void saveDatabase() throws IOException {
+    public void saveDatabase() {
         logger.info("Saving database...");
-        hardwareStore.writeDatabase();
-        JOptionPane.showMessageDialog(frame, "Database saved.");
-        logger.info("Database saved.");
+        new StoreWorker<Boolean>(frame, "Saving database...") {
+            @Override
+            protected Boolean doInBackground() {
+                return hardwareStore.writeDatabase(this);
+            }
+
+            @Override
+            protected void succeeded(Boolean saved) {
+                if (saved) {
+                    JOptionPane.showMessageDialog(frame, "Database saved.");
+                    logger.info("Database saved.");
+                } else {
+                    JOptionPane.showMessageDialog(frame, "Unable to save database.");
+                    logger.severe("Unable to save database.");
+                }
+            }
+
+            @Override
+            protected void cancelled() {
+                JOptionPane.showMessageDialog(frame, "Save cancelled. The database was not changed.");
+                logger.info("Save cancelled.");
+            }
+        }.start();
+    }
+
+    //Function 11
+    /**
+     * This method shows how many items, and how much stock, there is in
+     * every category, brand and appliance type, then lists the items of the
+     * one the user picks. Both come from the store's facet index, so they
+     * stay quick however many items there are, and are read on background
+     * workers.
+     */
+    public void browseByCategory() {
+        logger.info("User selected option 11, browsing items by category, brand and type.");
+        new StoreWorker<String>(frame) {
+            @Override
+            protected String doInBackground() {
+                return hardwareStore.getFormattedFacetCounts();
+            }
+
+            @Override
+            protected void succeeded(String counts) {
+                String value = JOptionPane.showInputDialog(frame,
+                        counts + "Please input a category, brand or appliance type to list its items.");
+                if (value == null || value.trim().isEmpty()) {
+                    logger.info("Browsing cancelled.");
+                    return;
+                }
+                showFacet(value.trim());
+            }
+        }.start();
+    }
+
+    /**
+     * Lists the items of a category, brand or appliance type.
+     *
+     * @param value the category, brand or appliance type
+     */
+    private void showFacet(final String value) {
+        new StoreWorker<String>(frame) {
+            @Override
+            protected String doInBackground() {
+                return hardwareStore.getMatchingItemsByFacet(value);
+            }
+
+            @Override
+            protected void succeeded(String output) {
+                if (output == null) {
+                    JOptionPane.showMessageDialog(frame, "No items with category, brand or type: " + value + ".");
+                    logger.info("No item(s) to display for that category, brand or type.");
+                } else {
+                    JOptionPane.showMessageDialog(frame, output);
+                    logger.info("Item(s) of that category, brand or type displayed successfully.");
+                }
+            }
+        }.start();
+    }
+
+    //Function 12
+    /**
+     * This method exports the items, users and transactions to text files in
+     * a folder chosen by the user. The tables are streamed to the files row
+     * by row on a background thread, so even a very long transaction history
+     * is never built up in memory. All three files are written from one
+     * <CODE>StoreView</CODE>, so they show the store at the same moment even
+     * while sales go on. The export shows its progress and can be
+     * cancelled, which leaves the files it had not finished incomplete.
+     */
+    public void exportRecords() {
+        logger.info("User selected option 12, exporting records.");
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Choose a folder to export to");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showSaveDialog(frame) != JFileChooser.APPROVE_OPTION) {
+            logger.info("Export cancelled.");
+            return;
+        }
+        final File directory = chooser.getSelectedFile();
+        new StoreWorker<Void>(frame, "Exporting records...") {
+            @Override
+            protected Void doInBackground() throws IOException {
+                // One view for all three files, so they agree with each other
+                try (StoreView view = hardwareStore.openView()) {
+                    progress(0, "Writing items...");
+                    try (Writer out = new BufferedWriter(new FileWriter(new File(directory, "items.txt")))) {
+                        TableWriter.writeItems(view.getItems(), out);
+                    }
+                    progress(0, "Writing users...");
+                    try (Writer out = new BufferedWriter(new FileWriter(new File(directory, "users.txt")))) {
+                        TableWriter.writeUsers(view.getUsers(), out);
+                    }
+                    try (Writer out = new BufferedWriter(new FileWriter(new File(directory, "transactions.txt")))) {
+                        TableWriter.writeTransactions(view.getTransactions(), out, view.getTransactionCount(), this);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            protected void succeeded(Void result) {
+                JOptionPane.showMessageDialog(frame, "Records exported to " + directory + ".");
+                logger.info("Records exported.");
+            }
+
+            @Override
+            protected void cancelled() {
+                JOptionPane.showMessageDialog(frame, "Export cancelled.");
+                logger.info("Export cancelled.");
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                JOptionPane.showMessageDialog(frame, "Unable to export records.");
+                logger.severe(cause.toString());
+            }
+        }.start();
     }
 
     /**
@@ -922,11 +1593,29 @@ public class MainApp {
          {
             public void actionPerformed(ActionEvent event)
             {
-                try {
-                    app.saveDatabase();
-                } catch (IOException ex) {
-                    logger.severe("Unable to save database.");
-                }
+                app.saveDatabase();
+            }
+         });
+
+      JRadioButton option11Button = new JRadioButton("Browse items by category, brand or appliance type.");
+
+      option11Button.addActionListener(new
+         ActionListener()
+         {
+            public void actionPerformed(ActionEvent event)
+            {
+                app.browseByCategory();
+            }
+         });
+
+      JRadioButton option12Button = new JRadioButton("Export all records to text files.");
+
+      option12Button.addActionListener(new
+         ActionListener()
+         {
+            public void actionPerformed(ActionEvent event)
+            {
+                app.exportRecords();
             }
          });
 
@@ -942,6 +1631,8 @@ public class MainApp {
       frame.add(option8Button);
       frame.add(option9Button);
       frame.add(option10Button);
+      frame.add(option11Button);
+      frame.add(option12Button);
 
       frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
       frame.pack();
@@ -0,0 +1,183 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui;
+
+import hardwarestoregui.index.QuantityIndex;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.storage.TransactionHistory;
+import hardwarestoregui.users.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * This class is a read-only, point-in-time view of the store, returned by
+ * <CODE>HardwareStore.openView()</CODE>. Everything read through one view -
+ * items and their quantities, users and transactions - is the store as it was
+ * at one version, however long the view is used and whatever is sold or
+ * changed meanwhile. Reading takes no lock, so reports never hold up sales.
+ *
+ * The store keeps what a change replaces for as long as an open view may
+ * read it: old quantities in each <CODE>Item</CODE>, replaced users in each
+ * <CODE>User</CODE>, and removed items and the history length in
+ * <CODE>HardwareStore</CODE>. A view must therefore be closed once it is no
+ * longer used.
+ *
+ * @author Zachary King
+ */
+public class StoreView implements AutoCloseable {
+
+    private final VersionClock clock;
+    private final long version;
+    private final ConcurrentSkipListMap<String, Item> itemCatalog;
+    private final Collection<Item> retiredItems;
+    private final QuantityIndex quantityIndex;
+    private final ConcurrentSkipListMap<Long, Item> restockedItems;
+    private final ConcurrentSkipListMap<Integer, User> userCatalog;
+    private final TransactionHistory transactionHistory;
+    private final long transactionCount;
+    private boolean closed;
+
+    /**
+     * Constructor initializes a view of the store at the given version, which
+     * has been opened with the clock.
+     */
+    StoreView(VersionClock clock, long version, ConcurrentSkipListMap<String, Item> itemCatalog,
+            Collection<Item> retiredItems, QuantityIndex quantityIndex,
+            ConcurrentSkipListMap<Long, Item> restockedItems, ConcurrentSkipListMap<Integer, User> userCatalog,
+            TransactionHistory transactionHistory, long transactionCount) {
+        this.clock = clock;
+        this.version = version;
+        this.itemCatalog = itemCatalog;
+        this.retiredItems = retiredItems;
+        this.quantityIndex = quantityIndex;
+        this.restockedItems = restockedItems;
+        this.userCatalog = userCatalog;
+        this.transactionHistory = transactionHistory;
+        this.transactionCount = transactionCount;
+    }
+
+    /**
+     * Get the version of the store this view shows.
+     * @return version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns all the items, sorted by ID, as copies holding the quantity
+     * they had at the view's version.
+     * @return the items
+     */
+    public List<Item> getItems() {
+        ArrayList<Item> items = new ArrayList<Item>(itemCatalog.size());
+        for (Item item : itemCatalog.values()) {
+            if (item.isVisibleAt(version)) {
+                items.add(item.asOf(version));
+            }
+        }
+        // Items removed since the view's version are rare; merge them in
+        TreeMap<String, Item> removed = null;
+        for (Item item : retiredItems) {
+            if (item.isVisibleAt(version)) {
+                if (removed == null) {
+                    removed = new TreeMap<String, Item>();
+                }
+                removed.put(item.getIdNumber(), item.asOf(version));
+            }
+        }
+        if (removed == null) {
+            return items;
+        }
+        for (Item item : items) {
+            removed.put(item.getIdNumber(), item);
+        }
+        return new ArrayList<Item>(removed.values());
+    }
+
+    /**
+     * Returns the items whose quantity at the view's version was lower than
+     * or equal to the given threshold, sorted by ID. The candidates are the
+     * items the <CODE>quantityIndex</CODE> now holds at or below the
+     * threshold, plus those restocked or removed since the view's version,
+     * so only a few items are looked at.
+     * @param quantity the quantity threshold
+     * @return the items, as copies holding the quantity of the view's version
+     */
+    public List<Item> getItemsAtMost(int quantity) {
+        TreeMap<String, Item> items = new TreeMap<String, Item>();
+        // The index is read first: an item is recorded as restocked or
+        // removed before it leaves the index
+        addAtMost(items, quantityIndex.atMost(quantity), quantity);
+        addAtMost(items, restockedItems.tailMap(version, false).values(), quantity);
+        addAtMost(items, retiredItems, quantity);
+        return new ArrayList<Item>(items.values());
+    }
+
+    private void addAtMost(TreeMap<String, Item> items, Collection<Item> candidates, int quantity) {
+        for (Item item : candidates) {
+            if (item.isVisibleAt(version) && item.getQuantity(version) <= quantity
+                    && !items.containsKey(item.getIdNumber())) {
+                items.put(item.getIdNumber(), item.asOf(version));
+            }
+        }
+    }
+
+    /**
+     * Returns all the users as they were at the view's version, sorted by ID.
+     * @return the users
+     */
+    public List<User> getUsers() {
+        ArrayList<User> users = new ArrayList<User>(userCatalog.size());
+        for (User user : userCatalog.values()) {
+            User old = user.asOf(version);
+            if (old != null) {
+                users.add(old);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Returns the number of transactions made up to the view's version.
+     * @return the transaction count
+     */
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Returns the transactions made up to the view's version, oldest first.
+     * The history is read a page at a time as the transactions are iterated.
+     * @return the transactions
+     */
+    public Iterable<Transaction> getTransactions() {
+        return new Iterable<Transaction>() {
+            @Override
+            public Iterator<Transaction> iterator() {
+                return transactionHistory.iterator(transactionCount);
+            }
+        };
+    }
+
+    /**
+     * Closes the view, so the store no longer keeps what only this view
+     * could read.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            clock.close(version);
+        }
+    }
+}
@@ -6,6 +6,8 @@
 
 package hardwarestoregui;
 
+import hardwarestoregui.format.ColumnLayout;
+
 import java.io.Serializable;
 import java.util.Date;
 
@@ -14,11 +16,15 @@ import java.util.Date;
  * @author Zachary King
  */
 public class Transaction implements Serializable {
+    private static final long serialVersionUID = 2532714249638947870L;
+    private static final ColumnLayout ROW_LAYOUT = new ColumnLayout("| %-10s| %-30s| %-10s| %-12s| %-12s|%n");
+
     private final String itemID;
     private final Date saleDate;
     private final int saleQuantity;
     private final int customerId;
     private final int employeeId;
+    private transient String formattedText;
 
     /**
      * Constructor initializes a SaleTransaction object with the provided values.
@@ -76,10 +82,40 @@ public class Transaction implements Serializable {
         return employeeId;
     }
 
+    /**
+     * Returns the attributes of the transaction, in a formatted text fashion.
+     * A transaction never changes, so the text is formatted once and kept.
+     * @return Formatted Text.
+     */
     public String getFormattedText() {
-        return String.format("| %-10s| %-30s| %-10s| %-12s| %-12s|%n",
-                itemID, saleDate, saleQuantity, customerId, employeeId);
+        String text = formattedText;
+        if (text == null) {
+            StringBuilder buffer = new StringBuilder(96);
+            formatText(buffer);
+            text = buffer.toString();
+            formattedText = text;
+        }
+        return text;
     }
+
+    /**
+     * Appends the same text as <CODE>getFormattedText()</CODE> to the given
+     * buffer. Once cached, this is a plain copy of the row.
+     * @param buffer the buffer to write to
+     */
+    public void appendFormattedText(StringBuilder buffer) {
+        buffer.append(getFormattedText());
+    }
+
+    private void formatText(StringBuilder buffer) {
+        ROW_LAYOUT.text(buffer, 0, itemID);
+        ROW_LAYOUT.text(buffer, 1, String.valueOf(saleDate));
+        ROW_LAYOUT.number(buffer, 2, saleQuantity);
+        ROW_LAYOUT.number(buffer, 3, customerId);
+        ROW_LAYOUT.number(buffer, 4, employeeId);
+        ROW_LAYOUT.end(buffer);
+    }
+
     @Override
     public String toString() {
         return "Transaction{" + "itemID=" + itemID + ", saleDate=" + saleDate + ",  saleQuantity=" + saleQuantity
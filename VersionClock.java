@@ -0,0 +1,117 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * This class hands out the versions that order the changes made to the
+ * store, and keeps track of the versions <CODE>StoreView</CODE>s are reading.
+ *
+ * Every change takes a new version with <CODE>begin()</CODE> and gives it
+ * back with <CODE>end()</CODE> once it has been applied. Changes to different
+ * items run in parallel and can end in any order, so the stable version - the
+ * one a new view reads - is the highest version below which every change has
+ * ended. The oldest version an open view reads tells the changes how much of
+ * the old state they still have to keep.
+ *
+ * The clock takes no lock, so that changes to different items do not queue
+ * on it. A change that ends out of order waits in <CODE>ended</CODE> until
+ * the change ending the version just above the stable one moves the stable
+ * version past it.
+ *
+ * @author Zachary King
+ */
+class VersionClock {
+
+    private static final BiFunction<Integer, Integer, Integer> ADD = new BiFunction<Integer, Integer, Integer>() {
+        @Override
+        public Integer apply(Integer count, Integer delta) {
+            int sum = count + delta;
+            return sum == 0 ? null : sum;
+        }
+    };
+
+    private static final BiFunction<Long, Integer, Integer> DECREMENT = new BiFunction<Long, Integer, Integer>() {
+        @Override
+        public Integer apply(Long version, Integer count) {
+            return count == 1 ? null : count - 1;
+        }
+    };
+
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong stable = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> ended = new ConcurrentSkipListSet<Long>();
+    private final ConcurrentSkipListMap<Long, Integer> reading = new ConcurrentSkipListMap<Long, Integer>();
+
+    /**
+     * Starts a change.
+     * @return the version of the change
+     */
+    long begin() {
+        return next.incrementAndGet();
+    }
+
+    /**
+     * Ends a change started with <CODE>begin()</CODE>. Call this once the
+     * change has been applied, also if applying it failed.
+     * @param version the version of the change
+     */
+    void end(long version) {
+        ended.add(version);
+        // Only the thread that takes the version above the stable one out of
+        // ended moves the stable version, so it cannot be moved twice
+        long current = stable.get();
+        while (ended.remove(current + 1)) {
+            current++;
+            stable.set(current);
+        }
+    }
+
+    /**
+     * Starts reading at the stable version. Every change up to that version
+     * has been applied, and none after it is seen.
+     * @return the version to read
+     */
+    long open() {
+        while (true) {
+            long version = stable.get();
+            reading.merge(version, 1, ADD);
+            // If the stable version moved meanwhile, oldest() may already
+            // have answered past this one
+            if (stable.get() == version) {
+                return version;
+            }
+            reading.merge(version, -1, ADD);
+        }
+    }
+
+    /**
+     * Stops reading at a version returned by <CODE>open()</CODE>.
+     * @param version the version
+     */
+    void close(long version) {
+        reading.computeIfPresent(version, DECREMENT);
+    }
+
+    /**
+     * Returns the oldest version that is or may still be read. State that was
+     * replaced at or before this version is no longer needed.
+     * @return the oldest version
+     */
+    long oldest() {
+        // Read the stable version first: a view opened after that reads it or
+        // a later one
+        long version = stable.get();
+        Map.Entry<Long, Integer> first = reading.firstEntry();
+        return first == null ? version : Math.min(version, first.getKey());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.format;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * This class is a fixed-width row layout, compiled once from a
+ * <CODE>String.format()</CODE> style pattern such as
+ * <CODE>"| %-8s| %-25s|%n"</CODE>. Rows are written field by field straight
+ * into a caller's <CODE>StringBuilder</CODE>: each field appends the text
+ * before it, its value, and then the padding up to its width. Nothing is
+ * parsed or allocated per row, so a buffer reused across rows fills with no
+ * garbage at all.
+ *
+ * Only <CODE>%s</CODE> and <CODE>%d</CODE> with an optional <CODE>-</CODE>
+ * flag and width, <CODE>%n</CODE> and <CODE>%%</CODE> are understood. As
+ * with <CODE>String.format()</CODE>, values longer than their width are not
+ * cut.
+ *
+ * A row is written by calling the field methods for columns 0, 1, ... in
+ * order and then <CODE>end()</CODE>:
+ * <PRE>
+ *     LAYOUT.text(buffer, 0, id);
+ *     LAYOUT.number(buffer, 1, quantity);
+ *     LAYOUT.end(buffer);
+ * </PRE>
+ *
+ * @author Zachary King
+ */
+public class ColumnLayout {
+
+    private static final String SPACES = "                                                                ";
+    private static final char DECIMAL_SEPARATOR =
+            DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT)).getDecimalSeparator();
+
+    // literals[i] is written before column i; the last one ends the row
+    private final String[] literals;
+    private final int[] widths;
+    private final boolean[] leftAligned;
+
+    /**
+     * Constructor compiles the given pattern.
+     * @param pattern the row pattern
+     * @throws IllegalArgumentException if the pattern uses anything but the
+     * supported conversions
+     */
+    public ColumnLayout(String pattern) {
+        ArrayList<String> literalList = new ArrayList<String>();
+        ArrayList<int[]> columnList = new ArrayList<int[]>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i++);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            boolean left = i < pattern.length() && pattern.charAt(i) == '-';
+            if (left) {
+                i++;
+            }
+            int width = 0;
+            while (i < pattern.length() && Character.isDigit(pattern.charAt(i))) {
+                width = width * 10 + pattern.charAt(i++) - '0';
+            }
+            char conversion = i < pattern.length() ? pattern.charAt(i++) : ' ';
+            if (conversion == 'n' && !left && width == 0) {
+                literal.append(System.lineSeparator());
+            } else if (conversion == '%' && !left && width == 0) {
+                literal.append('%');
+            } else if (conversion == 's' || conversion == 'd') {
+                literalList.add(literal.toString());
+                literal.setLength(0);
+                columnList.add(new int[] {width, left ? 1 : 0});
+            } else {
+                throw new IllegalArgumentException("Unsupported format in: " + pattern);
+            }
+        }
+        literalList.add(literal.toString());
+
+        literals = literalList.toArray(new String[literalList.size()]);
+        widths = new int[columnList.size()];
+        leftAligned = new boolean[columnList.size()];
+        for (int column = 0; column < widths.length; column++) {
+            widths[column] = columnList.get(column)[0];
+            leftAligned[column] = columnList.get(column)[1] == 1;
+        }
+    }
+
+    /**
+     * Get the number of columns.
+     * @return the column count
+     */
+    public int getColumnCount() {
+        return widths.length;
+    }
+
+    /**
+     * Writes a text field.
+     * @param buffer the row being written
+     * @param column the column
+     * @param value the text
+     */
+    public void text(StringBuilder buffer, int column, String value) {
+        int start = open(buffer, column);
+        buffer.append(value);
+        close(buffer, column, start);
+    }
+
+    /**
+     * Writes a whole number.
+     * @param buffer the row being written
+     * @param column the column
+     * @param value the number
+     */
+    public void number(StringBuilder buffer, int column, long value) {
+        int start = open(buffer, column);
+        buffer.append(value);
+        close(buffer, column, start);
+    }
+
+    /**
+     * Writes a price with two decimals, as <CODE>"%.2f"</CODE> would.
+     * @param buffer the row being written
+     * @param column the column
+     * @param value the price
+     */
+    public void price(StringBuilder buffer, int column, float value) {
+        int start = open(buffer, column);
+        appendPrice(buffer, value);
+        close(buffer, column, start);
+    }
+
+    /**
+     * Starts a field whose value the caller appends itself, for example
+     * when it is made of several parts. Finish it with <CODE>close()</CODE>.
+     * @param buffer the row being written
+     * @param column the column
+     * @return the position where the value starts
+     */
+    public int open(StringBuilder buffer, int column) {
+        buffer.append(literals[column]);
+        return buffer.length();
+    }
+
+    /**
+     * Pads a field started with <CODE>open()</CODE> to its width.
+     * @param buffer the row being written
+     * @param column the column
+     * @param start the position returned by <CODE>open()</CODE>
+     */
+    public void close(StringBuilder buffer, int column, int start) {
+        int padding = widths[column] - (buffer.length() - start);
+        while (padding > 0) {
+            int count = Math.min(padding, SPACES.length());
+            if (leftAligned[column]) {
+                buffer.append(SPACES, 0, count);
+            } else {
+                buffer.insert(start, SPACES, 0, count);
+            }
+            padding -= count;
+        }
+    }
+
+    /**
+     * Ends the row.
+     * @param buffer the row being written
+     */
+    public void end(StringBuilder buffer) {
+        buffer.append(literals[widths.length]);
+    }
+
+    /**
+     * Appends a price rounded half up to two decimals. A float times 100 is
+     * exact as a double, so rounding it gives the same digits as
+     * <CODE>"%.2f"</CODE>. Negative, huge and non-finite values are rare
+     * enough to be left to <CODE>String.format()</CODE>.
+     */
+    private static void appendPrice(StringBuilder buffer, float value) {
+        if (Float.floatToRawIntBits(value) < 0 || !(value < 1e15f)) {
+            buffer.append(String.format("%.2f", value));
+            return;
+        }
+        long cents = Math.round((double) value * 100);
+        buffer.append(cents / 100).append(DECIMAL_SEPARATOR);
+        if (cents % 100 < 10) {
+            buffer.append('0');
+        }
+        buffer.append(cents % 100);
+    }
+}
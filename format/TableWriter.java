@@ -0,0 +1,228 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.format;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.storage.ProgressListener;
+import hardwarestoregui.users.User;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * This class renders the item, user and transaction tables shown by the
+ * store. Rows are appended one at a time to an <CODE>Appendable</CODE>, so a
+ * table of any size can be written straight to a <CODE>Writer</CODE> without
+ * ever being held in memory, and building it in a <CODE>StringBuilder</CODE>
+ * takes time proportional to its length.
+ *
+ * Each row is appended by its object's <CODE>appendFormattedText()</CODE>,
+ * which copies the row's cached text (formatting it first if it changed) into
+ * one buffer that is reused for the whole table.
+ *
+ * The <CODE>format...()</CODE> methods build the whole table in a
+ * <CODE>StringBuilder</CODE> sized for the expected number of rows, for the
+ * dialogs that need a <CODE>String</CODE>.
+ *
+ * @author Zachary King
+ */
+public class TableWriter {
+
+    private static final String ITEM_RULE = " ------------------------------------------------------------------------------------------------------------------\n";
+    private static final String ITEM_HEADER = ITEM_RULE
+            + String.format("| %-8s| %-25s| %-10s| %-10s| %-20s| %-30s|%n", "Item ID", "Name", "Quantity", "Price", "Item Type", "Category / Brand and type")
+            + ITEM_RULE;
+
+    private static final String USER_RULE = " -------------------------------------------------------------------------------------------------\n";
+    private static final String USER_HEADER = USER_RULE
+            + String.format("| %-10s| %-9s| %-12s| %-12s| %-45s|%n", "User Type", "User ID", "First Name", "Last Name", "Special")
+            + USER_RULE;
+
+    private static final String TRANSACTION_RULE = " -----------------------------------------------------------------------------------\n";
+    private static final String TRANSACTION_HEADER = TRANSACTION_RULE
+            + String.format("| %-10s| %-30s| %-10s| %-12s| %-12s|%n", "Item ID", "Date", "Quantity", "Customer ID", "Employee ID")
+            + TRANSACTION_RULE;
+
+    private TableWriter() {
+    }
+
+    /**
+     * Writes a table of the given items.
+     * @param items the items, in the order they should be listed
+     * @param out where to write the table
+     * @throws IOException if <CODE>out</CODE> cannot be written
+     */
+    public static void writeItems(Iterable<Item> items, Appendable out) throws IOException {
+        Sink sink = new Sink(out, 0, null);
+        sink.buffer.append(ITEM_HEADER);
+        for (Item item : items) {
+            item.appendFormattedText(sink.buffer);
+            sink.buffer.append(ITEM_RULE);
+            sink.rowWritten();
+        }
+        sink.finish();
+    }
+
+    /**
+     * Writes a table of the given users.
+     * @param users the users, in the order they should be listed
+     * @param out where to write the table
+     * @throws IOException if <CODE>out</CODE> cannot be written
+     */
+    public static void writeUsers(Iterable<User> users, Appendable out) throws IOException {
+        Sink sink = new Sink(out, 0, null);
+        sink.buffer.append(USER_HEADER);
+        for (User user : users) {
+            user.appendFormattedText(sink.buffer);
+            sink.buffer.append(USER_RULE);
+            sink.rowWritten();
+        }
+        sink.finish();
+    }
+
+    /**
+     * Writes a table of the given transactions.
+     * @param transactions the transactions, in the order they should be listed
+     * @param out where to write the table
+     * @throws IOException if <CODE>out</CODE> cannot be written
+     */
+    public static void writeTransactions(Iterable<Transaction> transactions, Appendable out) throws IOException {
+        writeTransactions(transactions, out, 0, null);
+    }
+
+    /**
+     * Writes a table of the given transactions, reporting progress as it
+     * goes.
+     * @param transactions the transactions, in the order they should be listed
+     * @param out where to write the table
+     * @param count the number of transactions, used to work out the progress
+     * @param listener receives progress reports, or null
+     * @throws IOException if <CODE>out</CODE> cannot be written
+     */
+    public static void writeTransactions(Iterable<Transaction> transactions, Appendable out,
+            long count, ProgressListener listener) throws IOException {
+        Sink sink = new Sink(out, count, listener);
+        sink.buffer.append(TRANSACTION_HEADER);
+        for (Transaction transaction : transactions) {
+            transaction.appendFormattedText(sink.buffer);
+            sink.buffer.append(TRANSACTION_RULE);
+            sink.rowWritten();
+        }
+        sink.finish();
+    }
+
+    /**
+     * Returns a table of the given items.
+     * @param items the items, in the order they should be listed
+     * @return the table
+     */
+    public static String formatItems(Collection<Item> items) {
+        StringBuilder text = new StringBuilder(ITEM_HEADER.length() + items.size() * 2 * ITEM_RULE.length());
+        try {
+            writeItems(items, text);
+        } catch (IOException ex) {
+            // A StringBuilder never throws
+            System.err.println(ex.toString());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns a table of the given users.
+     * @param users the users, in the order they should be listed
+     * @return the table
+     */
+    public static String formatUsers(Collection<User> users) {
+        StringBuilder text = new StringBuilder(USER_HEADER.length() + users.size() * 2 * USER_RULE.length());
+        try {
+            writeUsers(users, text);
+        } catch (IOException ex) {
+            System.err.println(ex.toString());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns a table of the given transactions.
+     * @param transactions the transactions, in the order they should be listed
+     * @param count the number of transactions, used to size the table
+     * @return the table
+     */
+    public static String formatTransactions(Iterable<Transaction> transactions, long count) {
+        // Cap the initial capacity; a longer history grows the builder as needed
+        long size = TRANSACTION_HEADER.length() + count * 2 * TRANSACTION_RULE.length();
+        StringBuilder text = new StringBuilder((int) Math.min(size, 1 << 26));
+        try {
+            writeTransactions(transactions, text);
+        } catch (IOException ex) {
+            System.err.println(ex.toString());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Where the rows of a table go. Rows are appended to
+     * <CODE>buffer</CODE>: when the output is itself a
+     * <CODE>StringBuilder</CODE> that is the output, otherwise a reusable
+     * buffer that is handed on whenever it fills up, through a reusable
+     * <CODE>char</CODE> array for a <CODE>Writer</CODE>. Progress is
+     * reported every <CODE>PROGRESS_ROWS</CODE> rows, which is where a
+     * listener can cancel the table.
+     */
+    private static class Sink {
+        private static final int FLUSH_SIZE = 8192;
+        private static final int PROGRESS_ROWS = 1024;
+
+        private final Appendable out;
+        private final StringBuilder buffer;
+        private final long count;
+        private final ProgressListener listener;
+        private long rows;
+        private char[] chars;
+
+        Sink(Appendable out, long count, ProgressListener listener) {
+            this.out = out;
+            this.buffer = out instanceof StringBuilder ? (StringBuilder) out : new StringBuilder(2 * FLUSH_SIZE);
+            this.count = count;
+            this.listener = listener;
+        }
+
+        void rowWritten() throws IOException {
+            if (buffer != out && buffer.length() >= FLUSH_SIZE) {
+                flush();
+            }
+            if (++rows % PROGRESS_ROWS == 0 && listener != null) {
+                int percent = count > 0 ? (int) Math.min(99, rows * 100 / count) : 0;
+                listener.progress(percent, rows + " of " + count + " rows written");
+            }
+        }
+
+        void finish() throws IOException {
+            if (buffer != out) {
+                flush();
+            }
+            if (listener != null) {
+                listener.progress(100, rows + " rows written");
+            }
+        }
+
+        private void flush() throws IOException {
+            if (out instanceof Writer) {
+                if (chars == null || chars.length < buffer.length()) {
+                    chars = new char[buffer.length()];
+                }
+                buffer.getChars(0, buffer.length(), chars, 0);
+                ((Writer) out).write(chars, 0, buffer.length());
+            } else {
+                out.append(buffer);
+            }
+            buffer.setLength(0);
+        }
+    }
+}
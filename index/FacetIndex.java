@@ -0,0 +1,204 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.index;
+
+import hardwarestoregui.items.Appliances;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.items.SmallHardwareItems;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class groups the items by category (small hardware items), brand and
+ * appliance type (appliances). Each value of a facet is a <CODE>Bucket</CODE>
+ * holding its items and running totals of their number and their stock, so
+ * listing a category or showing the counts per brand never looks at the rest
+ * of the catalog. Values are matched ignoring case.
+ *
+ * The stock totals are keyed on the quantity an item had when it was last
+ * indexed, so every quantity change must go through
+ * <CODE>quantityChanged()</CODE> <b>before</b> <CODE>Item.setQuantity()</CODE>
+ * is called. The methods are synchronized, since sales of different items
+ * change quantities in parallel.
+ *
+ * @author Zachary King
+ */
+public class FacetIndex {
+
+    /**
+     * The attributes items are grouped by.
+     */
+    public enum Facet {
+        CATEGORY("Category"),
+        BRAND("Brand"),
+        TYPE("Appliance type");
+
+        private final String label;
+
+        Facet(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Get the name of the facet as shown to the user.
+         * @return label
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * The items sharing one value of a facet, with their totals.
+     */
+    public static class Bucket {
+        private final String value;
+        private final TreeMap<String, Item> items = new TreeMap<String, Item>();
+        private volatile long stock;
+
+        Bucket(String value) {
+            this.value = value;
+        }
+
+        /**
+         * Get the value, as spelled by the first item indexed under it.
+         * @return value
+         */
+        public String getValue() {
+            return value;
+        }
+
+        /**
+         * Get the number of items.
+         * @return the item count
+         */
+        public int getItemCount() {
+            return items.size();
+        }
+
+        /**
+         * Get the total quantity in stock of the items.
+         * @return stock
+         */
+        public long getStock() {
+            return stock;
+        }
+    }
+
+    private final EnumMap<Facet, TreeMap<String, Bucket>> facets = new EnumMap<Facet, TreeMap<String, Bucket>>(Facet.class);
+
+    /**
+     * Constructor initializes an index over the given items.
+     * @param items the items to index
+     */
+    public FacetIndex(Collection<Item> items) {
+        for (Facet facet : Facet.values()) {
+            facets.put(facet, new TreeMap<String, Bucket>());
+        }
+        for (Item item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item to the index.
+     * @param item the item
+     */
+    public synchronized void add(Item item) {
+        for (Map.Entry<Facet, String> value : values(item).entrySet()) {
+            TreeMap<String, Bucket> buckets = facets.get(value.getKey());
+            String key = key(value.getValue());
+            Bucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(value.getValue());
+                buckets.put(key, bucket);
+            }
+            bucket.items.put(item.getIdNumber(), item);
+            bucket.stock += item.getQuantity();
+        }
+    }
+
+    /**
+     * Removes an item from the index.
+     * @param item the item, still holding the quantity it was indexed with
+     */
+    public synchronized void remove(Item item) {
+        for (Map.Entry<Facet, String> value : values(item).entrySet()) {
+            TreeMap<String, Bucket> buckets = facets.get(value.getKey());
+            String key = key(value.getValue());
+            Bucket bucket = buckets.get(key);
+            if (bucket != null && bucket.items.remove(item.getIdNumber()) != null) {
+                bucket.stock -= item.getQuantity();
+                if (bucket.items.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the stock totals for a change of quantity. Call this before the
+     * item's quantity is changed.
+     * @param item the item, still holding its old quantity
+     * @param quantity the new quantity
+     */
+    public synchronized void quantityChanged(Item item, int quantity) {
+        for (Map.Entry<Facet, String> value : values(item).entrySet()) {
+            Bucket bucket = facets.get(value.getKey()).get(key(value.getValue()));
+            if (bucket != null) {
+                bucket.stock += quantity - item.getQuantity();
+            }
+        }
+    }
+
+    /**
+     * Returns the items with the given value of a facet, sorted by ID.
+     * @param facet the facet
+     * @param value the value, matched ignoring case
+     * @return the items, possibly none
+     */
+    public synchronized List<Item> items(Facet facet, String value) {
+        Bucket bucket = facets.get(facet).get(key(value));
+        return bucket == null ? new ArrayList<Item>() : new ArrayList<Item>(bucket.items.values());
+    }
+
+    /**
+     * Returns every value of a facet with its totals, sorted by value.
+     * @param facet the facet
+     * @return the buckets
+     */
+    public synchronized List<Bucket> buckets(Facet facet) {
+        return new ArrayList<Bucket>(facets.get(facet).values());
+    }
+
+    private static Map<Facet, String> values(Item item) {
+        Map<Facet, String> values = new EnumMap<Facet, String>(Facet.class);
+        if (item instanceof SmallHardwareItems) {
+            putValue(values, Facet.CATEGORY, ((SmallHardwareItems) item).getCategory());
+        } else if (item instanceof Appliances) {
+            putValue(values, Facet.BRAND, ((Appliances) item).getBrand());
+            putValue(values, Facet.TYPE, ((Appliances) item).getType());
+        }
+        return values;
+    }
+
+    private static void putValue(Map<Facet, String> values, Facet facet, String value) {
+        if (value != null) {
+            values.put(facet, value);
+        }
+    }
+
+    private static String key(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.index;
+
+import hardwarestoregui.items.Item;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class finds items whose name is close to a misspelled query. The
+ * distinct lower-cased words of all item names are kept in a BK-tree keyed
+ * on Levenshtein distance. Since the distance is a metric, a search for the
+ * words within distance <CODE>d</CODE> of a query word only has to descend
+ * into the children whose edge distance is within <CODE>d</CODE> of the
+ * query's distance to the node, which prunes most of the tree.
+ *
+ * An item matches when every word of the query is within the allowed
+ * distance of some word of its name (1 edit for words of up to 4
+ * characters, 2 for longer ones). Matches are ranked by the sum of those
+ * distances, then by item ID.
+ *
+ * Words are never removed from the tree; a word whose last item is removed
+ * simply has no items left and is skipped.
+ *
+ * @author Zachary King
+ */
+public class FuzzyIndex {
+
+    private Node root;
+    private final HashMap<String, Set<Item>> wordItems = new HashMap<String, Set<Item>>();
+
+    /**
+     * Constructor initializes an index over the given items.
+     * @param items the items to index
+     */
+    public FuzzyIndex(Collection<Item> items) {
+        for (Item item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item to the index.
+     * @param item the item
+     */
+    public void add(Item item) {
+        for (String word : words(item.getName())) {
+            Set<Item> items = wordItems.get(word);
+            if (items == null) {
+                items = new HashSet<Item>();
+                wordItems.put(word, items);
+                insert(word);
+            }
+            items.add(item);
+        }
+    }
+
+    /**
+     * Removes an item from the index.
+     * @param item the item
+     */
+    public void remove(Item item) {
+        for (String word : words(item.getName())) {
+            Set<Item> items = wordItems.get(word);
+            if (items != null) {
+                items.remove(item);
+            }
+        }
+    }
+
+    /**
+     * Returns the items whose name is close to the query, best match first.
+     * @param query the (possibly misspelled) name to look for
+     * @return the matching items
+     */
+    public List<Item> search(String query) {
+        Set<String> queryWords = words(query);
+        if (queryWords.isEmpty()) {
+            return new ArrayList<Item>();
+        }
+        // For every query word, the best distance reached by each item
+        final HashMap<Item, Integer> scores = new HashMap<Item, Integer>();
+        boolean first = true;
+        for (String queryWord : queryWords) {
+            HashMap<Item, Integer> best = new HashMap<Item, Integer>();
+            for (Map.Entry<String, Integer> match : within(queryWord, maxDistance(queryWord)).entrySet()) {
+                for (Item item : wordItems.get(match.getKey())) {
+                    Integer distance = best.get(item);
+                    if (distance == null || match.getValue() < distance) {
+                        best.put(item, match.getValue());
+                    }
+                }
+            }
+            if (first) {
+                scores.putAll(best);
+                first = false;
+            } else {
+                // Keep only the items that matched every word so far
+                scores.keySet().retainAll(best.keySet());
+                for (Map.Entry<Item, Integer> entry : scores.entrySet()) {
+                    entry.setValue(entry.getValue() + best.get(entry.getKey()));
+                }
+            }
+        }
+
+        List<Item> matches = new ArrayList<Item>(scores.keySet());
+        Collections.sort(matches, new Comparator<Item>() {
+            @Override
+            public int compare(Item o1, Item o2) {
+                int byScore = Integer.compare(scores.get(o1), scores.get(o2));
+                return byScore != 0 ? byScore : o1.getIdNumber().compareTo(o2.getIdNumber());
+            }
+        });
+        return matches;
+    }
+
+    /**
+     * Returns the indexed words within <CODE>maxDistance</CODE> of the given
+     * word that still have items, with their distances.
+     */
+    private Map<String, Integer> within(String word, int maxDistance) {
+        Map<String, Integer> found = new HashMap<String, Integer>();
+        if (root == null) {
+            return found;
+        }
+        Deque<Node> pending = new ArrayDeque<Node>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(word, node.word);
+            if (distance <= maxDistance && !wordItems.get(node.word).isEmpty()) {
+                found.put(node.word, distance);
+            }
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    pending.push(child.getValue());
+                }
+            }
+        }
+        return found;
+    }
+
+    private void insert(String word) {
+        if (root == null) {
+            root = new Node(word);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(word, node.word);
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(word));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    private static int maxDistance(String word) {
+        return word.length() <= 4 ? 1 : 2;
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<String>();
+        if (text != null) {
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Levenshtein distance, using two rows of the usual table.
+     */
+    private static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * A BK-tree node: a word and its children keyed by their distance to it.
+     */
+    private static class Node {
+        private final String word;
+        private final HashMap<Integer, Node> children = new HashMap<Integer, Node>();
+
+        Node(String word) {
+            this.word = word;
+        }
+    }
+}
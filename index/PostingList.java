@@ -0,0 +1,60 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.index;
+
+import java.util.Arrays;
+
+/**
+ * This class is a growable, append-only list of transaction positions, kept
+ * in a plain <CODE>long</CODE> array so a posting list costs 8 bytes per entry
+ * instead of a boxed object per entry. Positions are appended in increasing
+ * order, so the list is always sorted.
+ *
+ * @author Zachary King
+ */
+class PostingList {
+
+    private long[] positions = new long[4];
+    private int size;
+
+    /**
+     * Appends a position.
+     * @param position the position
+     */
+    void add(long position) {
+        if (size == positions.length) {
+            positions = Arrays.copyOf(positions, size * 2);
+        }
+        positions[size++] = position;
+    }
+
+    /**
+     * Returns the number of positions.
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copies the positions into <CODE>target</CODE>, starting at
+     * <CODE>offset</CODE>.
+     * @param target the destination array
+     * @param offset the first index to write to
+     */
+    void copyTo(long[] target, int offset) {
+        System.arraycopy(positions, 0, target, offset, size);
+    }
+
+    /**
+     * Returns a copy of the positions.
+     * @return the positions, in increasing order
+     */
+    long[] toArray() {
+        return Arrays.copyOf(positions, size);
+    }
+}
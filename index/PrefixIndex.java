@@ -0,0 +1,118 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.index;
+
+import hardwarestoregui.items.Item;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class is a sorted prefix index used for autocompletion. Every item is
+ * filed under its lower-cased ID and under its lower-cased name starting at
+ * each word ("claw hammer" and "hammer"), in a <CODE>TreeMap</CODE>. The
+ * completions of a prefix are the keys from the prefix up to the first key
+ * that no longer starts with it, so returning the first <CODE>k</CODE>
+ * completions only visits about <CODE>k</CODE> keys.
+ *
+ * @author Zachary King
+ */
+public class PrefixIndex {
+
+    private final TreeMap<String, TreeMap<String, Item>> keys = new TreeMap<String, TreeMap<String, Item>>();
+
+    /**
+     * Constructor initializes an index over the given items.
+     * @param items the items to index
+     */
+    public PrefixIndex(Collection<Item> items) {
+        for (Item item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item to the index.
+     * @param item the item
+     */
+    public void add(Item item) {
+        for (String key : keys(item)) {
+            TreeMap<String, Item> items = keys.get(key);
+            if (items == null) {
+                items = new TreeMap<String, Item>();
+                keys.put(key, items);
+            }
+            items.put(item.getIdNumber(), item);
+        }
+    }
+
+    /**
+     * Removes an item from the index.
+     * @param item the item
+     */
+    public void remove(Item item) {
+        for (String key : keys(item)) {
+            TreeMap<String, Item> items = keys.get(key);
+            if (items != null) {
+                items.remove(item.getIdNumber());
+                if (items.isEmpty()) {
+                    keys.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to <CODE>limit</CODE> items whose ID, name, or a word of
+     * whose name starts with the given prefix, ignoring case. Items are
+     * returned in the order of the key that matched them.
+     * @param prefix the text typed so far
+     * @param limit the maximum number of items to return
+     * @return the completions
+     */
+    public List<Item> complete(String prefix, int limit) {
+        Set<Item> completions = new LinkedHashSet<Item>();
+        String start = normalize(prefix).trim();
+        if (start.isEmpty()) {
+            return new ArrayList<Item>();
+        }
+        for (Map.Entry<String, TreeMap<String, Item>> entry : keys.tailMap(start, true).entrySet()) {
+            if (!entry.getKey().startsWith(start) || completions.size() >= limit) {
+                break;
+            }
+            for (Item item : entry.getValue().values()) {
+                completions.add(item);
+                if (completions.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return new ArrayList<Item>(completions);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> keys(Item item) {
+        Set<String> keys = new LinkedHashSet<String>();
+        keys.add(normalize(item.getIdNumber()));
+        String name = normalize(item.getName()).trim();
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != ' ' && (i == 0 || name.charAt(i - 1) == ' ')) {
+                keys.add(name.substring(i));
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.index;
+
+import hardwarestoregui.items.Item;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * This class is a secondary index of items ordered by quantity. Items with
+ * the same quantity are kept ordered by item ID, so "quantity at most N" is a
+ * range query over the head of the tree that returns the items lowest stock
+ * first, and only touches the items it returns.
+ *
+ * The index is keyed on the quantity an item had when it was last indexed,
+ * so every quantity change must go through <CODE>quantityChanged()</CODE>
+ * <b>before</b> <CODE>Item.setQuantity()</CODE> is called. The methods are
+ * synchronized, since sales of different items change quantities in
+ * parallel.
+ *
+ * @author Zachary King
+ */
+public class QuantityIndex {
+
+    private final TreeMap<Integer, TreeMap<String, Item>> buckets = new TreeMap<Integer, TreeMap<String, Item>>();
+
+    /**
+     * Constructor initializes an index over the given items.
+     * @param items the items to index
+     */
+    public QuantityIndex(Collection<Item> items) {
+        for (Item item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item to the index under its current quantity.
+     * @param item the item
+     */
+    public synchronized void add(Item item) {
+        TreeMap<String, Item> bucket = buckets.get(item.getQuantity());
+        if (bucket == null) {
+            bucket = new TreeMap<String, Item>();
+            buckets.put(item.getQuantity(), bucket);
+        }
+        bucket.put(item.getIdNumber(), item);
+    }
+
+    /**
+     * Removes an item from the index.
+     * @param item the item, still holding the quantity it was indexed under
+     */
+    public synchronized void remove(Item item) {
+        TreeMap<String, Item> bucket = buckets.get(item.getQuantity());
+        if (bucket != null) {
+            bucket.remove(item.getIdNumber());
+            if (bucket.isEmpty()) {
+                buckets.remove(item.getQuantity());
+            }
+        }
+    }
+
+    /**
+     * Moves an item to its new quantity. Call this before the item's
+     * quantity is changed.
+     * @param item the item, still holding its old quantity
+     * @param quantity the new quantity
+     */
+    public synchronized void quantityChanged(Item item, int quantity) {
+        remove(item);
+        TreeMap<String, Item> bucket = buckets.get(quantity);
+        if (bucket == null) {
+            bucket = new TreeMap<String, Item>();
+            buckets.put(quantity, bucket);
+        }
+        bucket.put(item.getIdNumber(), item);
+    }
+
+    /**
+     * Returns the items whose quantity is lower than or equal to the given
+     * threshold, lowest quantity first, then by item ID.
+     * @param quantity the quantity threshold
+     * @return the matching items
+     */
+    public synchronized List<Item> atMost(int quantity) {
+        List<Item> items = new ArrayList<Item>();
+        for (TreeMap<String, Item> bucket : buckets.headMap(quantity, true).values()) {
+            items.addAll(bucket.values());
+        }
+        return items;
+    }
+}
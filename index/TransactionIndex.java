@@ -0,0 +1,136 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.index;
+
+import hardwarestoregui.Transaction;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class indexes the transaction history by item ID, customer ID,
+ * employee ID and sale day. Each key maps to a <CODE>PostingList</CODE> of
+ * positions in the <CODE>TransactionHistory</CODE>, so a query returns the
+ * positions of exactly the matching transactions, oldest first, and the
+ * caller only reads those.
+ *
+ * Sale days are kept in a <CODE>TreeMap</CODE>, so a date range is a range
+ * query over the days it covers. The first and last day may hold sales just
+ * outside the range; callers check the exact time of those.
+ *
+ * @author Zachary King
+ */
+public class TransactionIndex {
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long[] NONE = new long[0];
+
+    private final HashMap<String, PostingList> byItem = new HashMap<String, PostingList>();
+    private final HashMap<Integer, PostingList> byCustomer = new HashMap<Integer, PostingList>();
+    private final HashMap<Integer, PostingList> byEmployee = new HashMap<Integer, PostingList>();
+    private final TreeMap<Long, PostingList> byDay = new TreeMap<Long, PostingList>();
+    private long size;
+
+    /**
+     * Adds the next transaction of the history.
+     * @param position the transaction's position in the history
+     * @param transaction the transaction
+     */
+    public void add(long position, Transaction transaction) {
+        posting(byItem, itemKey(transaction.getItemID())).add(position);
+        posting(byCustomer, transaction.getCustomerId()).add(position);
+        posting(byEmployee, transaction.getEmployeeId()).add(position);
+        posting(byDay, day(transaction.getsaleDate())).add(position);
+        size = position + 1;
+    }
+
+    /**
+     * Returns the number of history positions covered, which is also the
+     * position the next transaction is expected at.
+     * @return the number of transactions indexed
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the positions of the sales of an item, ignoring case.
+     * @param itemId the item ID
+     * @return the positions, oldest first
+     */
+    public long[] byItem(String itemId) {
+        return positions(byItem.get(itemKey(itemId)));
+    }
+
+    /**
+     * Returns the positions of a customer's purchases.
+     * @param customerId the customer ID
+     * @return the positions, oldest first
+     */
+    public long[] byCustomer(int customerId) {
+        return positions(byCustomer.get(customerId));
+    }
+
+    /**
+     * Returns the positions of the sales made by an employee.
+     * @param employeeId the employee ID
+     * @return the positions, oldest first
+     */
+    public long[] byEmployee(int employeeId) {
+        return positions(byEmployee.get(employeeId));
+    }
+
+    /**
+     * Returns the positions of the sales made on the days from
+     * <CODE>from</CODE> to <CODE>to</CODE>, both included.
+     * @param from the start of the range
+     * @param to the end of the range
+     * @return the positions, oldest first
+     */
+    public long[] byDays(Date from, Date to) {
+        Collection<PostingList> days = byDay.subMap(day(from), true, day(to), true).values();
+        int count = 0;
+        for (PostingList day : days) {
+            count += day.size();
+        }
+        long[] positions = new long[count];
+        int offset = 0;
+        for (PostingList day : days) {
+            day.copyTo(positions, offset);
+            offset += day.size();
+        }
+        // Sales are usually in date order already, but the clock may have moved
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    private static <K> PostingList posting(Map<K, PostingList> index, K key) {
+        PostingList posting = index.get(key);
+        if (posting == null) {
+            posting = new PostingList();
+            index.put(key, posting);
+        }
+        return posting;
+    }
+
+    private static long[] positions(PostingList posting) {
+        return posting == null ? NONE : posting.toArray();
+    }
+
+    private static String itemKey(String itemId) {
+        return itemId == null ? "" : itemId.toLowerCase(Locale.ROOT);
+    }
+
+    private static long day(Date date) {
+        return Math.floorDiv(date.getTime(), DAY_MILLIS);
+    }
+}
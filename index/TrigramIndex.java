@@ -0,0 +1,142 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.index;
+
+import hardwarestoregui.items.Item;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is an inverted index from the trigrams (3-character substrings)
+ * of each item's lower-cased name to the items containing them. A substring
+ * search only has to look at the items sharing the query's rarest trigram,
+ * instead of every item in the catalog, and then checks those candidates
+ * with <CODE>contains()</CODE>.
+ *
+ * Names shorter than three characters are indexed under the whole name.
+ * Queries shorter than three characters are answered by going through the
+ * distinct trigrams (there are far fewer of them than items) and taking the
+ * items of every trigram that contains the query.
+ *
+ * @author Zachary King
+ */
+public class TrigramIndex {
+
+    private static final int GRAM = 3;
+
+    private final HashMap<String, Set<Item>> postings = new HashMap<String, Set<Item>>();
+
+    /**
+     * Constructor initializes an index over the given items.
+     * @param items the items to index
+     */
+    public TrigramIndex(Collection<Item> items) {
+        for (Item item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds an item to the index.
+     * @param item the item
+     */
+    public void add(Item item) {
+        for (String gram : grams(normalize(item.getName()))) {
+            Set<Item> items = postings.get(gram);
+            if (items == null) {
+                items = new HashSet<Item>();
+                postings.put(gram, items);
+            }
+            items.add(item);
+        }
+    }
+
+    /**
+     * Removes an item from the index.
+     * @param item the item
+     */
+    public void remove(Item item) {
+        for (String gram : grams(normalize(item.getName()))) {
+            Set<Item> items = postings.get(gram);
+            if (items != null) {
+                items.remove(item);
+                if (items.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the items whose name contains the query, ignoring case, sorted
+     * by item ID.
+     * @param query the text to look for
+     * @return the matching items
+     */
+    public List<Item> search(String query) {
+        String text = normalize(query);
+        Set<Item> candidates;
+        if (text.length() < GRAM) {
+            candidates = new HashSet<Item>();
+            for (Map.Entry<String, Set<Item>> entry : postings.entrySet()) {
+                if (entry.getKey().contains(text)) {
+                    candidates.addAll(entry.getValue());
+                }
+            }
+        } else {
+            candidates = null;
+            for (String gram : grams(text)) {
+                Set<Item> items = postings.get(gram);
+                if (items == null) {
+                    return new ArrayList<Item>();
+                }
+                if (candidates == null || items.size() < candidates.size()) {
+                    candidates = items;
+                }
+            }
+        }
+
+        List<Item> matches = new ArrayList<Item>();
+        for (Item item : candidates) {
+            if (normalize(item.getName()).contains(text)) {
+                matches.add(item);
+            }
+        }
+        Collections.sort(matches, new Comparator<Item>() {
+            @Override
+            public int compare(Item o1, Item o2) {
+                return o1.getIdNumber().compareTo(o2.getIdNumber());
+            }
+        });
+        return matches;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<String>();
+        if (text.length() < GRAM) {
+            grams.add(text);
+        } else {
+            for (int i = 0; i + GRAM <= text.length(); i++) {
+                grams.add(text.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+}
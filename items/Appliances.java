@@ -13,6 +13,8 @@ package hardwarestoregui.items;
  * @author Zachary King
  */
 public class Appliances extends Item {
+    private static final long serialVersionUID = -203860955315243362L;
+
     protected final String brand;
     protected final String type;
 
@@ -51,19 +53,25 @@ public class Appliances extends Item {
 
 
     /**
-     * Returns the attributes of the appliance, in a formatted text fashion.
-     * @return Formatted Text.
+     * Appends the attributes of the appliance, in a formatted text fashion.
+     * @param buffer the buffer to write to
      */
     @Override
-    public String getFormattedText() {
-        return String.format("| %-8s| %-25s| %-10s| %-10s| %-20s| %-30s|%n",
-                this.getIdNumber(),
-                this.getName(),
-                Integer.toString(this.getQuantity()),
-                String.format("%.2f", this.getPrice()),
-                "Appliances",
-                this.getBrand()+" "+ this.getType()
-        );
+    protected void formatText(StringBuilder buffer) {
+        ROW_LAYOUT.text(buffer, 0, this.getIdNumber());
+        ROW_LAYOUT.text(buffer, 1, this.getName());
+        ROW_LAYOUT.number(buffer, 2, this.getQuantity());
+        ROW_LAYOUT.price(buffer, 3, this.getPrice());
+        ROW_LAYOUT.text(buffer, 4, "Appliances");
+        int start = ROW_LAYOUT.open(buffer, 5);
+        buffer.append(this.getBrand()).append(' ').append(this.getType());
+        ROW_LAYOUT.close(buffer, 5, start);
+        ROW_LAYOUT.end(buffer);
+    }
+
+    @Override
+    public Item copy() {
+        return new Appliances(idNumber, name, quantity, price, brand, type);
     }
 
 }
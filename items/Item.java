@@ -16,15 +16,51 @@ package hardwarestoregui.items;
  * @author Zachary King
  */
 
+import hardwarestoregui.format.ColumnLayout;
+
 import java.io.Serializable;
 
 public abstract class Item implements Serializable {
+    private static final long serialVersionUID = 1232898538394832880L;
+
+    /**
+     * The layout of a row of the item table.
+     */
+    protected static final ColumnLayout ROW_LAYOUT = new ColumnLayout("| %-8s| %-25s| %-10s| %-10s| %-20s| %-30s|%n");
+
 
     protected final String idNumber;
     protected final String name;
-    protected int quantity;
+    protected volatile int quantity;
     protected final float price;
 
+    // The row shown in item tables, and a count of changes to detect a row
+    // formatted while the item was changing
+    private transient volatile String formattedText;
+    private transient volatile int modCount;
+
+    // The quantities kept for store views, newest first, and the versions at
+    // which the item was added to and removed from the catalog (0 while it
+    // has not been removed)
+    private transient volatile QuantityVersion versions;
+    private transient volatile long addedVersion;
+    private transient volatile long removedVersion;
+
+    /**
+     * The quantity an item had from a version on.
+     */
+    private static class QuantityVersion {
+        final long version;
+        final int quantity;
+        volatile QuantityVersion older;
+
+        QuantityVersion(long version, int quantity, QuantityVersion older) {
+            this.version = version;
+            this.quantity = quantity;
+            this.older = older;
+        }
+    }
+
     /**
      * This constructor initializes the item object. The constructor provides no
      * user input validation. That should be handled by the class that creates a
@@ -76,6 +112,114 @@ public abstract class Item implements Serializable {
      */
     public void setQuantity(int quantity) {
         this.quantity= quantity;
+        invalidateFormattedText();
+    }
+
+    /**
+     * Sets the item's quantity as of the given version, keeping the old
+     * quantity for store views reading an earlier version. Quantities no
+     * view can read any more are dropped. Calls for one item must not
+     * overlap.
+     *
+     * @param quantity the new quantity
+     * @param version the version of the change
+     * @param oldestVersion the oldest version a view may still read
+     */
+    public void setQuantity(int quantity, long version, long oldestVersion) {
+        QuantityVersion older = versions;
+        if (older == null) {
+            older = new QuantityVersion(addedVersion, this.quantity, null);
+        }
+        QuantityVersion newest = new QuantityVersion(version, quantity, older);
+        QuantityVersion kept = newest;
+        while (kept.version > oldestVersion && kept.older != null) {
+            kept = kept.older;
+        }
+        kept.older = null;
+        // Published before the quantity, see getQuantity(long)
+        versions = newest;
+        setQuantity(quantity);
+    }
+
+    /**
+     * Returns the quantity the item had at the given version, which must not
+     * be older than the oldest version passed to <CODE>setQuantity()</CODE>
+     * since.
+     *
+     * @param version the version
+     * @return the quantity
+     */
+    public int getQuantity(long version) {
+        QuantityVersion node = versions;
+        if (node == null) {
+            int current = quantity;
+            node = versions;
+            if (node == null) {
+                // Never changed; the quantity read above is the original one
+                return current;
+            }
+        }
+        while (node.version > version && node.older != null) {
+            node = node.older;
+        }
+        return node.quantity;
+    }
+
+    /**
+     * Returns a copy of the item holding the quantity it had at the given
+     * version, for a store view. The copy shares the item's formatted row
+     * when the quantity has not changed since.
+     *
+     * @param version the version
+     * @return the copy
+     */
+    public Item asOf(long version) {
+        int snapshotQuantity = getQuantity(version);
+        Item item = copy();
+        item.quantity = snapshotQuantity;
+        if (snapshotQuantity == quantity) {
+            String text = getFormattedText();
+            if (snapshotQuantity == quantity) {
+                item.formattedText = text;
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Records the version at which the item was added to the catalog. Call
+     * this before the item is added.
+     * @param version the version
+     */
+    public void setAddedVersion(long version) {
+        addedVersion = version;
+    }
+
+    /**
+     * Records the version at which the item was removed from the catalog.
+     * Call this before the item is removed.
+     * @param version the version
+     */
+    public void setRemovedVersion(long version) {
+        removedVersion = version;
+    }
+
+    /**
+     * Get the version at which the item was removed from the catalog.
+     * @return the version, or 0 if it has not been removed
+     */
+    public long getRemovedVersion() {
+        return removedVersion;
+    }
+
+    /**
+     * Returns true if the item was in the catalog at the given version.
+     * @param version the version
+     * @return whether the item was in the catalog
+     */
+    public boolean isVisibleAt(long version) {
+        long removed = removedVersion;
+        return addedVersion <= version && (removed == 0 || removed > version);
     }
 
     /**
@@ -100,9 +244,56 @@ public abstract class Item implements Serializable {
     }
 
     /**
-     * Abstract print method, to be implemented by subclasses of class User.
-     * @return
+     * Returns the attributes of the item, in a formatted text fashion. The
+     * text is formatted on first use and kept until the quantity changes, so
+     * listing an unchanged item again costs no formatting.
+     * @return Formatted Text.
+     */
+    public String getFormattedText() {
+        String text = formattedText;
+        if (text == null) {
+            int version = modCount;
+            StringBuilder buffer = new StringBuilder(128);
+            formatText(buffer);
+            text = buffer.toString();
+            formattedText = text;
+            if (modCount != version) {
+                // Changed while being formatted; do not keep the old text
+                formattedText = null;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Appends the same text as <CODE>getFormattedText()</CODE> to the given
+     * buffer. Once cached, this is a plain copy of the row.
+     * @param buffer the buffer to write to
+     */
+    public void appendFormattedText(StringBuilder buffer) {
+        buffer.append(getFormattedText());
+    }
+
+    /**
+     * Drops the cached formatted text. Called by every setter.
+     */
+    protected void invalidateFormattedText() {
+        modCount++;
+        formattedText = null;
+    }
+
+    /**
+     * Abstract print method, to be implemented by subclasses of class Item.
+     * Appends the attributes of the item to the given buffer.
+     * @param buffer the buffer to write to
+     */
+    protected abstract void formatText(StringBuilder buffer);
+
+    /**
+     * Returns an independent copy of this item, used when taking a snapshot of
+     * the store while it keeps changing.
+     * @return a copy of this item
      */
-    public abstract String getFormattedText();
+    public abstract Item copy();
 }
 
@@ -12,6 +12,8 @@ package hardwarestoregui.items;
  * @author Zachary King
  */
 public class SmallHardwareItems extends Item {
+    private static final long serialVersionUID = -8731377788135663841L;
+
     protected final String category;
 
     /**
@@ -38,19 +40,23 @@ public class SmallHardwareItems extends Item {
 
 
     /**
-     * Returns the attributes of the small hardware item, in a formatted text fashion.
-     * @return Formatted Text.
+     * Appends the attributes of the small hardware item, in a formatted text fashion.
+     * @param buffer the buffer to write to
      */
     @Override
-    public String getFormattedText() {
-        return String.format("| %-8s| %-25s| %-10s| %-10s| %-20s| %-30s|%n",
-                this.getIdNumber(),
-                this.getName(),
-                Integer.toString(this.getQuantity()),
-                String.format("%.2f", this.getPrice()),
-                "Small Hardware Items",
-                this.getCategory()
-        );
+    protected void formatText(StringBuilder buffer) {
+        ROW_LAYOUT.text(buffer, 0, this.getIdNumber());
+        ROW_LAYOUT.text(buffer, 1, this.getName());
+        ROW_LAYOUT.number(buffer, 2, this.getQuantity());
+        ROW_LAYOUT.price(buffer, 3, this.getPrice());
+        ROW_LAYOUT.text(buffer, 4, "Small Hardware Items");
+        ROW_LAYOUT.text(buffer, 5, this.getCategory());
+        ROW_LAYOUT.end(buffer);
+    }
+
+    @Override
+    public Item copy() {
+        return new SmallHardwareItems(idNumber, name, quantity, price, category);
     }
 
 }
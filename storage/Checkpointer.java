@@ -0,0 +1,75 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs checkpoints in the background. It periodically asks the
+ * storage engine whether a save is due (for the file engine: once the log has
+ * grown too large or too old) and, if so, runs the checkpoint task. The task
+ * saves a fresh snapshot, which lets the engine compact whatever it has been
+ * accumulating, so the log never grows without bound.
+ *
+ * @author Zachary King
+ */
+public class Checkpointer {
+
+    private static final long POLL_INTERVAL_MILLIS = 5000;
+
+    private final StorageEngine engine;
+    private final Runnable checkpoint;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Constructor initializes a checkpointer. Call <CODE>start()</CODE> to
+     * begin polling.
+     * @param engine the storage engine to watch
+     * @param checkpoint the task that saves a snapshot
+     */
+    public Checkpointer(StorageEngine engine, Runnable checkpoint) {
+        this.engine = engine;
+        this.checkpoint = checkpoint;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "checkpointer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts polling the engine in the background.
+     */
+    public void start() {
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (engine.isSaveDue()) {
+                        checkpoint.run();
+                    }
+                } catch (RuntimeException ex) {
+                    // Keep polling; the next checkpoint will retry
+                    System.err.println(ex.toString());
+                }
+            }
+        }, POLL_INTERVAL_MILLIS, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling. A checkpoint that is already running is allowed to finish.
+     */
+    public void stop() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * This class converts a database file written with default Java
+ * serialization into the compact <CODE>RecordCodec</CODE> format, moving the
+ * transactions into "transactions.dat" next to the output file. The program
+ * also reads old files directly, so running the converter is only needed to
+ * shrink a database ahead of time.
+ *
+ * Usage: <CODE>DatabaseConverter [input [output]]</CODE>. Both default to
+ * "database.ser", in which case the file is converted in place.
+ *
+ * @author Zachary King
+ */
+public class DatabaseConverter {
+
+    /**
+     * Converts the given database file.
+     * @param args optional input and output file names
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        File input = new File(args.length > 0 ? args[0] : "database.ser");
+        File output = new File(args.length > 1 ? args[1] : input.getPath());
+
+        File directory = output.getAbsoluteFile().getParentFile();
+
+        System.out.print("Converting " + input + " (" + input.length() + " bytes)...");
+        StoreSnapshot snapshot = SnapshotFile.read(input);
+        long transactionCount = snapshot.getTransactionCount();
+        if (!snapshot.getTransactions().isEmpty()) {
+            // Older files stored the transactions inline
+            TransactionFile transactions = new TransactionFile(
+                    new File(directory, "transactions.dat"), new File(directory, "transactions.idx"));
+            try {
+                transactions.truncate(0);
+                transactions.append(snapshot.getTransactions());
+            } finally {
+                transactions.close();
+            }
+            transactionCount = snapshot.getTransactions().size();
+        }
+        SnapshotFile.write(new StoreSnapshot(snapshot.getItems(), snapshot.getUsers(),
+                new ArrayList<Transaction>(), transactionCount, snapshot.getUserIdCounter(),
+                snapshot.getLogSegment()), output, null);
+        System.out.println("Done. Wrote " + output + " (" + output.length() + " bytes): "
+                + (snapshot.getItems() == null ? "items in the item table" : snapshot.getItems().size() + " items")
+                + ", " + snapshot.getUsers().size() + " users, "
+                + transactionCount + " transactions.");
+    }
+}
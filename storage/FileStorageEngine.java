@@ -0,0 +1,385 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.users.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class is the default storage engine. It keeps a snapshot of the items
+ * and users in "database.ser" (<CODE>SnapshotFile</CODE>), the transaction
+ * history in "transactions.dat" (<CODE>TransactionFile</CODE>), and every
+ * change made since the snapshot in the <CODE>MutationLog</CODE>
+ * ("database.log.N"), which is replayed on top of the snapshot at startup.
+ *
+ * A save starts a new log segment, appends the new transactions to the
+ * transaction file, replaces the snapshot and then deletes the log segments
+ * it covers. A save is due once the log holds <CODE>maxLogBytes</CODE> or its
+ * oldest record is <CODE>maxLogAgeMillis</CODE> old, and right after a
+ * database file from an older version has been migrated.
+ *
+ * Log records are synced in groups (see <CODE>MutationLog</CODE>), so
+ * <CODE>awaitDurable()</CODE> is what makes a change safe from a crash.
+ *
+ * A snapshot saved by the <CODE>MappedStorageEngine</CODE> keeps no items;
+ * they are read from its <CODE>MappedItemTable</CODE> ("items.tbl") after the
+ * log has been replayed onto it. This engine then leaves the table alone,
+ * and its next save puts the items back into the snapshot.
+ *
+ * @author Zachary King
+ */
+public class FileStorageEngine implements StorageEngine {
+
+    private static final String DATA_FILE_NAME = "database.ser";
+    private static final String LOG_FILE_NAME = "database.log";
+    private static final String TRANSACTION_FILE_NAME = "transactions.dat";
+    private static final String TRANSACTION_INDEX_FILE_NAME = "transactions.idx";
+    static final String ITEM_TABLE_FILE_NAME = "items.tbl";
+
+    private final File directory;
+    private final long maxLogBytes;
+    private final long maxLogAgeMillis;
+    private final long commitWindowMillis;
+    private MutationLog mutationLog;
+    private TransactionFile transactionFile;
+    private TransactionHistory transactionHistory;
+    private volatile boolean migrated;
+
+    /**
+     * Constructor initializes an engine over the files in the given directory.
+     * @param directory the directory holding the database files
+     * @param maxLogBytes log size that makes a save due
+     * @param maxLogAgeMillis age of the oldest log record that makes a save due
+     * @param commitWindowMillis how long the log waits to group records
+     * into one sync
+     */
+    public FileStorageEngine(File directory, long maxLogBytes, long maxLogAgeMillis, long commitWindowMillis) {
+        this.directory = directory;
+        this.maxLogBytes = maxLogBytes;
+        this.maxLogAgeMillis = maxLogAgeMillis;
+        this.commitWindowMillis = commitWindowMillis;
+    }
+
+    /**
+     * Reads the snapshot, opens the transaction file and replays the log.
+     * Transactions stored inline by an older database file are moved into the
+     * transaction file, and a save is reported as due. The transaction file is
+     * only cut back to the count of a snapshot that has been read. If the
+     * snapshot keeps no items, the item records of the log are replayed onto
+     * the item table and the items are read from it.
+     * @return the loaded store
+     * @throws IOException if the snapshot exists but cannot be read, in which
+     * case no file has been changed
+     */
+    @Override
+    public StoreSnapshot load() throws IOException {
+        File dataFile = new File(directory, DATA_FILE_NAME);
+
+        // Try to read existing dealership database from a file
+        ArrayList<Item> items = new ArrayList<Item>();
+        ArrayList<User> users = new ArrayList<User>();
+        ArrayList<Transaction> inlineTransactions = new ArrayList<Transaction>();
+        long transactionCount = 0;
+        int userIdCounter = 1;
+        long logSegment = 1;
+        if (!dataFile.exists()) {
+            System.out.println("Data file does not exist. Creating a new database.");
+        } else {
+            StoreSnapshot snapshot;
+            try {
+                snapshot = SnapshotFile.read(dataFile);
+            } catch (IOException ex) {
+                // Going on with an empty store would cut the transaction file
+                // down to nothing, and the next save would replace the
+                // snapshot; leave every file as it is instead
+                throw new IOException("Unable to read " + dataFile + ": " + ex, ex);
+            }
+            items = snapshot.getItems();
+            users = snapshot.getUsers();
+            inlineTransactions = snapshot.getTransactions();
+            transactionCount = snapshot.getTransactionCount();
+            userIdCounter = snapshot.getUserIdCounter();
+            logSegment = snapshot.getLogSegment();
+        }
+
+        // Drop transactions the snapshot does not vouch for, then move in any
+        // transactions an older database file stored inline
+        transactionFile = new TransactionFile(new File(directory, TRANSACTION_FILE_NAME),
+                new File(directory, TRANSACTION_INDEX_FILE_NAME));
+        transactionFile.truncate(transactionCount);
+        if (!inlineTransactions.isEmpty()) {
+            transactionFile.append(inlineTransactions);
+            transactionCount += inlineTransactions.size();
+            migrated = true;
+        }
+        transactionHistory = new TransactionHistory(transactionFile, transactionCount);
+
+        MappedItemTable table = null;
+        if (items == null) {
+            File tableFile = new File(directory, ITEM_TABLE_FILE_NAME);
+            try {
+                table = new MappedItemTable(tableFile);
+            } catch (IOException ex) {
+                throw new IOException("The items of " + dataFile + " are kept in " + tableFile + ": " + ex, ex);
+            }
+            items = new ArrayList<Item>();
+        }
+
+        mutationLog = new MutationLog(directory, LOG_FILE_NAME, commitWindowMillis);
+        final MappedItemTable itemTable = table;
+        final long[] position = new long[1];
+        final ArrayList<Item> itemList = items;
+        final HashMap<String, Item> itemsById = new HashMap<String, Item>();
+        for (Item item : itemList) {
+            itemsById.put(key(item.getIdNumber()), item);
+        }
+        final LinkedHashMap<Integer, User> usersById = new LinkedHashMap<Integer, User>();
+        for (User user : users) {
+            usersById.put(user.getId(), user);
+        }
+        final int[] nextUserId = {userIdCounter};
+        MutationLog.Handler handler = new MutationLog.Handler() {
+            @Override
+            public void position(long recordPosition) {
+                position[0] = recordPosition;
+            }
+
+            @Override
+            public void newItem(Item item) throws IOException {
+                if (itemTable != null) {
+                    itemTable.put(item, position[0]);
+                } else {
+                    itemList.add(item);
+                    itemsById.put(key(item.getIdNumber()), item);
+                }
+            }
+
+            @Override
+            public void quantityChanged(String itemId, int delta) {
+                if (itemTable != null) {
+                    itemTable.addQuantity(itemId, delta, position[0]);
+                } else {
+                    Item item = itemsById.get(key(itemId));
+                    item.setQuantity(item.getQuantity() + delta);
+                }
+            }
+
+            @Override
+            public void itemRemoved(String itemId) {
+                if (itemTable != null) {
+                    itemTable.remove(itemId, position[0]);
+                } else {
+                    itemList.remove(itemsById.remove(key(itemId)));
+                }
+            }
+
+            @Override
+            public void userSaved(User user) {
+                usersById.put(user.getId(), user);
+                nextUserId[0] = Math.max(nextUserId[0], user.getId() + 1);
+            }
+
+            @Override
+            public void sale(Transaction transaction) {
+                transactionHistory.add(transaction);
+                if (itemTable != null) {
+                    itemTable.addQuantity(transaction.getItemID(), -transaction.getSaleQuantity(), position[0]);
+                } else {
+                    Item item = itemsById.get(key(transaction.getItemID()));
+                    item.setQuantity(item.getQuantity() - transaction.getSaleQuantity());
+                }
+            }
+        };
+        int replayed;
+        try {
+            replayed = mutationLog.replay(logSegment, handler);
+        } catch (IOException ex) {
+            if (itemTable != null) {
+                itemTable.close();
+            }
+            throw ex;
+        }
+        if (replayed > 0) {
+            System.out.print("Replayed " + replayed + " logged changes...");
+        }
+
+        ArrayList<Item> loadedItems = itemTable == null ? itemList : itemTable.loadAll();
+        itemsLoaded(loadedItems, itemTable);
+        return new StoreSnapshot(loadedItems, new ArrayList<User>(usersById.values()),
+                new ArrayList<Transaction>(), transactionCount, nextUserId[0], logSegment);
+    }
+
+    /**
+     * Called by <CODE>load()</CODE> once the items are loaded, with the item
+     * table they were read from (brought up to date with the log), or null
+     * if they came from the snapshot. This engine closes the table.
+     * @param items the items
+     * @param table the item table, or null
+     * @throws IOException
+     */
+    protected void itemsLoaded(ArrayList<Item> items, MappedItemTable table) throws IOException {
+        if (table != null) {
+            table.close();
+        }
+    }
+
+    /**
+     * Returns true: the items are saved in the snapshot.
+     * @return true
+     */
+    @Override
+    public boolean savesItems() {
+        return true;
+    }
+
+    /**
+     * Has every record the log syncs from now on applied to the given
+     * handler, as <CODE>MutationLog.setApplier()</CODE> describes.
+     * @param handler the handler
+     */
+    protected void applySynced(MutationLog.Handler handler) {
+        mutationLog.setApplier(handler);
+    }
+
+    /**
+     * Returns the error that stopped synced records from being applied to
+     * the handler given to <CODE>applySynced()</CODE>, or null.
+     * @return the error
+     */
+    protected Exception getApplyFailure() {
+        return mutationLog.getApplyFailure();
+    }
+
+    /**
+     * Returns the position the next log record will be written at.
+     * @return the log position
+     */
+    protected long getLogEnd() {
+        return mutationLog.getEndPosition();
+    }
+
+    @Override
+    public TransactionHistory getTransactionHistory() {
+        return transactionHistory;
+    }
+
+    @Override
+    public void itemAdded(Item item) throws IOException {
+        mutationLog.logNewItem(item);
+    }
+
+    @Override
+    public void quantityChanged(Item item, int delta) throws IOException {
+        mutationLog.logQuantityChange(item.getIdNumber(), delta);
+    }
+
+    @Override
+    public void itemRemoved(Item item) throws IOException {
+        mutationLog.logRemoveItem(item.getIdNumber());
+    }
+
+    @Override
+    public void userSaved(User user) throws IOException {
+        mutationLog.logUser(user);
+    }
+
+    @Override
+    public void saleRecorded(Transaction transaction, Item item) throws IOException {
+        // One record covers both the transaction and the quantity change
+        mutationLog.logSale(transaction);
+    }
+
+    @Override
+    public void cartRecorded(List<Transaction> transactions, List<Item> items) throws IOException {
+        mutationLog.logCart(transactions);
+    }
+
+    /**
+     * Waits for the log to sync this thread's records.
+     * @throws IOException
+     */
+    @Override
+    public void awaitDurable() throws IOException {
+        mutationLog.awaitDurable();
+    }
+
+    /**
+     * Starts a new log segment, so the snapshot taken next contains exactly
+     * the changes logged before it.
+     * @return the first log segment not covered by the snapshot
+     * @throws IOException
+     */
+    @Override
+    public long beginSave() throws IOException {
+        return mutationLog.rotate();
+    }
+
+    /**
+     * Appends the snapshot's transactions to the transaction file, replaces
+     * the database file atomically and deletes the log segments it covers.
+     * @param snapshot the snapshot
+     * @param listener receives progress reports, or null
+     * @return true if the snapshot was saved
+     */
+    @Override
+    public boolean save(StoreSnapshot snapshot, ProgressListener listener) {
+        try {
+            if (listener != null) {
+                listener.progress(5, "Archiving transactions...");
+            }
+            transactionHistory.archive(snapshot.getTransactions());
+            SnapshotFile.write(snapshot, new File(directory, DATA_FILE_NAME), listener);
+        } catch (IOException ex) {
+            System.err.println(ex.toString());
+            return false;
+        }
+        transactionHistory.markArchived(snapshot.getTransactions().size());
+        mutationLog.deleteSegmentsBefore(snapshot.getLogSegment());
+        migrated = false;
+        return true;
+    }
+
+    /**
+     * Returns true if the log is large or old enough to be compacted, or an
+     * older database file has been migrated and not yet saved.
+     * @return whether a save is due
+     */
+    @Override
+    public boolean isSaveDue() {
+        if (migrated || mutationLog.getPendingBytes() >= maxLogBytes) {
+            return true;
+        }
+        long oldest = mutationLog.getOldestPendingTime();
+        return oldest != 0 && System.currentTimeMillis() - oldest >= maxLogAgeMillis;
+    }
+
+    /**
+     * Closes the log and the transaction file.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        mutationLog.close();
+        transactionFile.close();
+    }
+
+    /**
+     * Item IDs are matched ignoring case, as in <CODE>HardwareStore.findItem()</CODE>.
+     */
+    private static String key(String itemId) {
+        return itemId.toLowerCase(Locale.ROOT);
+    }
+}
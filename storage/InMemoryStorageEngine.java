@@ -0,0 +1,126 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.users.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a storage engine that keeps nothing on disk. Every store
+ * starts empty and is lost when the program exits, which makes it useful for
+ * trying the program out and as a baseline when comparing the other engines.
+ *
+ * @author Zachary King
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+
+    private final TransactionHistory transactionHistory = new TransactionHistory(new MemoryArchive(), 0);
+
+    @Override
+    public StoreSnapshot load() {
+        System.out.println("Using an in-memory database; nothing will be saved.");
+        return new StoreSnapshot(new ArrayList<Item>(), new ArrayList<User>(),
+                new ArrayList<Transaction>(), 0, 1, 0);
+    }
+
+    @Override
+    public TransactionHistory getTransactionHistory() {
+        return transactionHistory;
+    }
+
+    @Override
+    public void itemAdded(Item item) {
+    }
+
+    @Override
+    public void quantityChanged(Item item, int delta) {
+    }
+
+    @Override
+    public void itemRemoved(Item item) {
+    }
+
+    @Override
+    public void userSaved(User user) {
+    }
+
+    @Override
+    public void saleRecorded(Transaction transaction, Item item) {
+    }
+
+    @Override
+    public void cartRecorded(List<Transaction> transactions, List<Item> items) {
+    }
+
+    @Override
+    public void awaitDurable() {
+    }
+
+    @Override
+    public boolean savesItems() {
+        return false;
+    }
+
+    @Override
+    public long beginSave() {
+        return 0;
+    }
+
+    @Override
+    public boolean save(StoreSnapshot snapshot, ProgressListener listener) {
+        return true;
+    }
+
+    @Override
+    public boolean isSaveDue() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * The archive behind the history, kept in a list. This engine never
+     * archives transactions itself, so they normally all stay in the
+     * history's own list.
+     */
+    private static class MemoryArchive implements TransactionArchive {
+
+        private final ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+
+        @Override
+        public synchronized long size() {
+            return transactions.size();
+        }
+
+        @Override
+        public synchronized List<Transaction> read(long first, int count) {
+            return new ArrayList<Transaction>(transactions.subList((int) first, (int) first + count));
+        }
+
+        @Override
+        public synchronized void append(List<Transaction> appended) {
+            transactions.addAll(appended);
+        }
+
+        @Override
+        public synchronized void truncate(long count) {
+            if (count < transactions.size()) {
+                transactions.subList((int) count, transactions.size()).clear();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.items.Appliances;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.items.SmallHardwareItems;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class keeps the item catalog in a memory-mapped file of fixed-size
+ * slots ("items.tbl"). Every item lives in one slot, so a quantity change is
+ * a single write into the mapped region and opening the table only has to
+ * look at the status and ID of each slot.
+ *
+ * The table is the record of the items between two snapshots: a change is
+ * written into it only once its <CODE>MutationLog</CODE> record is on disk,
+ * and every slot stores the log position of the last record applied to it.
+ * The mapped pages reach the disk in no particular order, so after a crash
+ * any slot may be behind; replaying the log onto the table brings each slot
+ * up to date, skipping the records its position shows it already has. The
+ * table has to be forced with <CODE>force()</CODE> before the log segments
+ * it covers are deleted.
+ *
+ * The header takes one page and a slot is a power of two bytes long, so a
+ * slot never spans two pages, and the fields that recovery relies on (status,
+ * quantity and position) sit at the start of it. The widths of the string
+ * fields are stored in the header; a string longer than its field makes the
+ * table copy itself into a new file with wider slots, so any item fits.
+ *
+ * Slot layout (offsets in bytes):
+ * <PRE>
+ *   0  status   (0 = free, 1 = used)
+ *   1  type     (1 = small hardware item, 2 = appliance)
+ *   2  quantity (int)
+ *   6  price    (long, in cents)
+ *  14  position (long, log position of the last record applied)
+ *  22  id, name, category or brand, appliance type
+ *      (each an int length, -1 for null, and its field's width in bytes)
+ * </PRE>
+ *
+ * @author Zachary King
+ */
+public class MappedItemTable implements Closeable {
+
+    /**
+     * The smallest slot size in bytes.
+     */
+    public static final int SLOT_SIZE = 256;
+
+    private static final byte[] MAGIC = {'H', 'W', 'I', 'T'};
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 4096;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Header layout
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_SLOT_COUNT = 8;
+    private static final int HEADER_SLOT_SIZE = 12;
+    private static final int HEADER_ID_BYTES = 16;
+    private static final int HEADER_NAME_BYTES = 20;
+    private static final int HEADER_ATTRIBUTE_BYTES = 24;
+
+    // Slot layout
+    private static final int STATUS = 0;
+    private static final int TYPE = 1;
+    private static final int QUANTITY = 2;
+    private static final int PRICE = 6;
+    private static final int POSITION = 14;
+    private static final int ID = 22;
+
+    // Field widths of a new table, which fill a SLOT_SIZE slot
+    private static final int ID_BYTES = 16;
+    private static final int NAME_BYTES = 120;
+    private static final int ATTRIBUTE_BYTES = 40;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final byte SMALL_HARDWARE_ITEM = 1;
+    private static final byte APPLIANCE = 2;
+
+    private File path;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int slotCount;
+    private int slotSize;
+    private int idBytes;
+    private int nameBytes;
+    private int attributeBytes;
+    private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<Integer>();
+
+    /**
+     * Constructor opens an existing table and indexes the slots in use by
+     * item ID. Only the status, ID and position of each slot are read.
+     * @param path the table file
+     * @throws IOException if the file is missing or not a table of this
+     * version
+     */
+    public MappedItemTable(File path) throws IOException {
+        this.path = path;
+        if (!path.exists()) {
+            throw new IOException(path + " does not exist");
+        }
+        open();
+    }
+
+    /**
+     * Constructor creates an empty table with the given field widths,
+     * replacing any file at the path.
+     */
+    private MappedItemTable(File path, int idBytes, int nameBytes, int attributeBytes) throws IOException {
+        this.path = path;
+        this.idBytes = idBytes;
+        this.nameBytes = nameBytes;
+        this.attributeBytes = attributeBytes;
+        int needed = ID + 16 + idBytes + nameBytes + 2 * attributeBytes;
+        slotSize = SLOT_SIZE;
+        while (slotSize < needed) {
+            slotSize *= 2;
+        }
+        // Whatever the slot has left over goes to the name
+        this.nameBytes += slotSize - needed;
+        file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        channel = file.getChannel();
+        map(INITIAL_CAPACITY);
+        buffer.put(MAGIC);
+        buffer.putInt(HEADER_VERSION, VERSION);
+        buffer.putInt(HEADER_SLOT_COUNT, 0);
+        buffer.putInt(HEADER_SLOT_SIZE, slotSize);
+        buffer.putInt(HEADER_ID_BYTES, idBytes);
+        buffer.putInt(HEADER_NAME_BYTES, this.nameBytes);
+        buffer.putInt(HEADER_ATTRIBUTE_BYTES, attributeBytes);
+    }
+
+    /**
+     * Writes a new table holding the given items, each marked as up to date
+     * with the log at the given position, and replaces the file at the path
+     * with it. The slots are made wide enough for the longest strings.
+     * @param path the table file
+     * @param items the items
+     * @param position the log position the items are up to date with
+     * @return the new table, open
+     * @throws IOException
+     */
+    public static MappedItemTable create(File path, List<Item> items, long position) throws IOException {
+        int id = ID_BYTES;
+        int name = NAME_BYTES;
+        int attribute = ATTRIBUTE_BYTES;
+        for (Item item : items) {
+            id = Math.max(id, length(item.getIdNumber()));
+            name = Math.max(name, length(item.getName()));
+            for (String value : attributes(item)) {
+                attribute = Math.max(attribute, length(value));
+            }
+        }
+        File tempFile = new File(path.getPath() + ".tmp");
+        MappedItemTable table = new MappedItemTable(tempFile, id, name, attribute);
+        try {
+            for (Item item : items) {
+                table.write(item, position, false);
+            }
+        } catch (IOException ex) {
+            table.close();
+            throw ex;
+        }
+        table.replace(path);
+        return table;
+    }
+
+    /**
+     * Returns the number of items in the table.
+     * @return the item count
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    /**
+     * Decodes every item in the table, in slot order.
+     * @return the items
+     */
+    public synchronized ArrayList<Item> loadAll() {
+        ArrayList<Item> items = new ArrayList<Item>(slots.size());
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (buffer.get(offset(slot) + STATUS) == USED) {
+                items.add(readItem(slot));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Applies the addition of an item logged at the given position. An item
+     * with the same ID that is older than the record is replaced.
+     * @param item the item
+     * @param position the log position of the record
+     * @throws IOException if the table could not be widened for the item
+     */
+    public synchronized void put(Item item, long position) throws IOException {
+        Integer slot = slots.get(key(item.getIdNumber()));
+        if (slot != null) {
+            if (buffer.getLong(offset(slot) + POSITION) >= position) {
+                return;
+            }
+            free(item.getIdNumber());
+        }
+        if (!fits(item)) {
+            widen(item);
+        }
+        write(item, position, true);
+    }
+
+    /**
+     * Applies a change of quantity logged at the given position, unless the
+     * item's slot already has it.
+     * @param itemId the ID of the item
+     * @param delta the (signed) quantity added
+     * @param position the log position of the record
+     */
+    public synchronized void addQuantity(String itemId, int delta, long position) {
+        Integer slot = slots.get(key(itemId));
+        if (slot != null) {
+            int base = offset(slot);
+            if (buffer.getLong(base + POSITION) < position) {
+                buffer.putInt(base + QUANTITY, buffer.getInt(base + QUANTITY) + delta);
+                buffer.putLong(base + POSITION, position);
+            }
+        }
+    }
+
+    /**
+     * Applies the removal of an item logged at the given position, unless the
+     * item in the table was added after it.
+     * @param itemId the ID of the item
+     * @param position the log position of the record
+     */
+    public synchronized void remove(String itemId, long position) {
+        Integer slot = slots.get(key(itemId));
+        if (slot != null && buffer.getLong(offset(slot) + POSITION) < position) {
+            free(itemId);
+        }
+    }
+
+    /**
+     * Forces every change made to the table to disk.
+     */
+    public synchronized void force() {
+        buffer.force();
+    }
+
+    /**
+     * Forces the table to disk and closes it.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+        file.close();
+    }
+
+    /**
+     * Maps the file at the path and indexes its slots. Of two used slots
+     * with the same ID, left by a crash between a removal and a new item
+     * reaching the disk, the older one is freed.
+     */
+    private void open() throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        if (channel.size() < HEADER_SIZE) {
+            throw new IOException(path + " is not an item table");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException(path + " is not an item table");
+            }
+        }
+        if (buffer.getInt(HEADER_VERSION) != VERSION) {
+            throw new IOException("Unsupported item table version " + buffer.getInt(HEADER_VERSION));
+        }
+        slotSize = buffer.getInt(HEADER_SLOT_SIZE);
+        idBytes = buffer.getInt(HEADER_ID_BYTES);
+        nameBytes = buffer.getInt(HEADER_NAME_BYTES);
+        attributeBytes = buffer.getInt(HEADER_ATTRIBUTE_BYTES);
+        map((int) ((channel.size() - HEADER_SIZE) / slotSize));
+        slotCount = buffer.getInt(HEADER_SLOT_COUNT);
+        slots.clear();
+        freeSlots.clear();
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (buffer.get(offset(slot) + STATUS) != USED) {
+                freeSlots.add(slot);
+                continue;
+            }
+            String key = key(readId(slot));
+            Integer other = slots.get(key);
+            if (other == null) {
+                slots.put(key, slot);
+                continue;
+            }
+            int older = slot;
+            if (buffer.getLong(offset(other) + POSITION) < buffer.getLong(offset(slot) + POSITION)) {
+                older = other;
+                slots.put(key, slot);
+            }
+            buffer.put(offset(older) + STATUS, FREE);
+            freeSlots.add(older);
+        }
+    }
+
+    /**
+     * Writes an item into a free slot. In a table in use the slot is forced
+     * to disk before it is marked used, so a crash never exposes a
+     * half-written item; a table still being filled under a temporary name
+     * is forced once it is complete.
+     */
+    private void write(Item item, long position, boolean force) throws IOException {
+        int slot = allocate();
+        int base = offset(slot);
+        buffer.putInt(base + QUANTITY, item.getQuantity());
+        buffer.putLong(base + PRICE, Math.round(item.getPrice() * 100.0));
+        buffer.putLong(base + POSITION, position);
+        int field = base + ID;
+        field = writeString(field, idBytes, item.getIdNumber());
+        field = writeString(field, nameBytes, item.getName());
+        String[] attributes = attributes(item);
+        field = writeString(field, attributeBytes, attributes[0]);
+        writeString(field, attributeBytes, attributes[1]);
+        buffer.put(base + TYPE, item instanceof Appliances ? APPLIANCE : SMALL_HARDWARE_ITEM);
+        if (force) {
+            buffer.force();
+        }
+        buffer.put(base + STATUS, USED);
+        slots.put(key(item.getIdNumber()), slot);
+    }
+
+    private void free(String itemId) {
+        Integer slot = slots.remove(key(itemId));
+        buffer.put(offset(slot) + STATUS, FREE);
+        freeSlots.add(slot);
+    }
+
+    private boolean fits(Item item) {
+        String[] attributes = attributes(item);
+        return length(item.getIdNumber()) <= idBytes && length(item.getName()) <= nameBytes
+                && length(attributes[0]) <= attributeBytes && length(attributes[1]) <= attributeBytes;
+    }
+
+    /**
+     * Copies the table into a new file whose fields are wide enough for the
+     * given item as well, keeping the position of every slot, and switches
+     * over to it.
+     */
+    private void widen(Item item) throws IOException {
+        int id = Math.max(idBytes, length(item.getIdNumber()));
+        int name = Math.max(nameBytes, length(item.getName()));
+        int attribute = attributeBytes;
+        for (String value : attributes(item)) {
+            attribute = Math.max(attribute, length(value));
+        }
+        MappedItemTable wider = new MappedItemTable(new File(path.getPath() + ".tmp"), id, name, attribute);
+        try {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (buffer.get(offset(slot) + STATUS) == USED) {
+                    wider.write(readItem(slot), buffer.getLong(offset(slot) + POSITION), false);
+                }
+            }
+        } catch (IOException ex) {
+            wider.close();
+            throw ex;
+        }
+        wider.close();
+        channel.close();
+        file.close();
+        Files.move(new File(path.getPath() + ".tmp").toPath(), path.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    /**
+     * Forces this table, which was written under a temporary name, and
+     * renames it over the given file.
+     */
+    private void replace(File target) throws IOException {
+        buffer.force();
+        channel.close();
+        file.close();
+        Files.move(path.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        path = target;
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        map(capacity);
+    }
+
+    private int allocate() throws IOException {
+        if (!freeSlots.isEmpty()) {
+            return freeSlots.poll();
+        }
+        if (slotCount == capacity) {
+            map(capacity * 2);
+        }
+        int slot = slotCount++;
+        buffer.putInt(HEADER_SLOT_COUNT, slotCount);
+        return slot;
+    }
+
+    private void map(int slotCapacity) throws IOException {
+        capacity = Math.max(slotCapacity, INITIAL_CAPACITY);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * slotSize);
+    }
+
+    private Item readItem(int slot) {
+        int base = offset(slot);
+        int field = base + ID;
+        String idNumber = readString(field);
+        field += 4 + idBytes;
+        String name = readString(field);
+        field += 4 + nameBytes;
+        String attribute = readString(field);
+        String secondAttribute = readString(field + 4 + attributeBytes);
+        int quantity = buffer.getInt(base + QUANTITY);
+        float price = (float) (buffer.getLong(base + PRICE) / 100.0);
+        if (buffer.get(base + TYPE) == APPLIANCE) {
+            return new Appliances(idNumber, name, quantity, price, attribute, secondAttribute);
+        }
+        return new SmallHardwareItems(idNumber, name, quantity, price, attribute);
+    }
+
+    private String readId(int slot) {
+        return readString(offset(slot) + ID);
+    }
+
+    private int offset(int slot) {
+        return HEADER_SIZE + slot * slotSize;
+    }
+
+    /**
+     * Item IDs are matched ignoring case, as in <CODE>HardwareStore.findItem()</CODE>.
+     */
+    private static String key(String itemId) {
+        return itemId.toLowerCase(Locale.ROOT);
+    }
+
+    private static String[] attributes(Item item) {
+        if (item instanceof Appliances) {
+            return new String[] {((Appliances) item).getBrand(), ((Appliances) item).getType()};
+        }
+        return new String[] {((SmallHardwareItems) item).getCategory(), null};
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    /**
+     * Writes a length-prefixed string into a field of the given width, which
+     * it has been checked to fit. A length of -1 stands for null.
+     * @return the position of the next field
+     */
+    private int writeString(int position, int width, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(position, value == null ? -1 : bytes.length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + 4);
+        target.put(bytes);
+        return position + 4 + width;
+    }
+
+    private String readString(int position) {
+        int length = buffer.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + 4);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.users.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * This class is a <CODE>FileStorageEngine</CODE> that keeps the item catalog
+ * in a <CODE>MappedItemTable</CODE> ("items.tbl") instead of the snapshot.
+ * Item changes are logged as usual, and each one is applied to the table once
+ * the log has synced it, so the table never holds a change that is not
+ * durable. A save forces the table to disk and writes a snapshot without
+ * items, so it costs no more with a large catalog than with a small one; the
+ * log segments the save covers are only deleted once the table holding their
+ * changes is on disk. At startup the log is replayed onto the table, whose
+ * slots know which records they already hold, and the items are read from it.
+ *
+ * A database saved by the file engine (or by an older version of this one)
+ * keeps its items in the snapshot. The table is then built from the loaded
+ * items, and a save is due right away so that the snapshot can drop them.
+ *
+ * @author Zachary King
+ */
+public class MappedStorageEngine extends FileStorageEngine {
+
+    private final File directory;
+    private MappedItemTable itemTable;
+    private volatile boolean converting;
+
+    /**
+     * Constructor initializes an engine over the files in the given directory.
+     * @param directory the directory holding the database files
+     * @param maxLogBytes log size that makes a save due
+     * @param maxLogAgeMillis age of the oldest log record that makes a save due
+     * @param commitWindowMillis how long the log waits to group records
+     * into one sync
+     */
+    public MappedStorageEngine(File directory, long maxLogBytes, long maxLogAgeMillis, long commitWindowMillis) {
+        super(directory, maxLogBytes, maxLogAgeMillis, commitWindowMillis);
+        this.directory = directory;
+    }
+
+    /**
+     * Keeps the item table the items were read from, or builds one from the
+     * items of the snapshot, and has the log apply every synced record to it.
+     * @param items the items
+     * @param table the item table, or null
+     * @throws IOException if the table could not be built
+     */
+    @Override
+    protected void itemsLoaded(ArrayList<Item> items, MappedItemTable table) throws IOException {
+        if (table == null) {
+            // Every record logged so far is in the loaded items
+            table = MappedItemTable.create(new File(directory, ITEM_TABLE_FILE_NAME), items, getLogEnd() - 1);
+            converting = true;
+        }
+        itemTable = table;
+        final MappedItemTable appliedTable = table;
+        applySynced(new MutationLog.Handler() {
+            private long position;
+
+            @Override
+            public void position(long recordPosition) {
+                position = recordPosition;
+            }
+
+            @Override
+            public void newItem(Item item) throws IOException {
+                appliedTable.put(item, position);
+            }
+
+            @Override
+            public void quantityChanged(String itemId, int delta) {
+                appliedTable.addQuantity(itemId, delta, position);
+            }
+
+            @Override
+            public void itemRemoved(String itemId) {
+                appliedTable.remove(itemId, position);
+            }
+
+            @Override
+            public void userSaved(User user) {
+            }
+
+            @Override
+            public void sale(Transaction transaction) {
+                appliedTable.addQuantity(transaction.getItemID(), -transaction.getSaleQuantity(), position);
+            }
+        });
+    }
+
+    /**
+     * Returns false: the item table is the record of the items.
+     * @return false
+     */
+    @Override
+    public boolean savesItems() {
+        return false;
+    }
+
+    /**
+     * Forces the item table, which holds every change logged before the
+     * save began, then saves the snapshot. Nothing is saved if a logged
+     * change could not be applied to the table, so the log keeps it.
+     * @param snapshot the snapshot, without items
+     * @param listener receives progress reports, or null
+     * @return true if the snapshot was saved
+     */
+    @Override
+    public boolean save(StoreSnapshot snapshot, ProgressListener listener) {
+        Exception failure = getApplyFailure();
+        if (failure != null) {
+            System.err.println("The item table is missing logged changes: " + failure);
+            return false;
+        }
+        itemTable.force();
+        if (!super.save(snapshot, listener)) {
+            return false;
+        }
+        converting = false;
+        return true;
+    }
+
+    /**
+     * Returns true if the snapshot still holds the items, or a save is due
+     * for the usual reasons.
+     * @return whether a save is due
+     */
+    @Override
+    public boolean isSaveDue() {
+        return converting || super.isSaveDue();
+    }
+
+    /**
+     * Closes the log, which applies its last records to the item table, the
+     * transaction file and then the item table.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (itemTable != null) {
+                itemTable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,655 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.users.User;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * This class is an append-only binary log of every mutation made to the
+ * store since the last snapshot was written. Each mutation is appended (and
+ * synced to disk) as it happens, so work done between two saves survives a
+ * crash. On startup the log is replayed on top of the snapshot through a
+ * <CODE>Handler</CODE>.
+ *
+ * The log is split into numbered segment files ("database.log.1",
+ * "database.log.2", ...). A checkpoint calls <CODE>rotate()</CODE> to start a
+ * new segment, writes a snapshot of everything before it, and then deletes the
+ * older segments with <CODE>deleteSegmentsBefore()</CODE>.
+ *
+ * Record payloads use the <CODE>RecordCodec</CODE> format. Every record is
+ * framed as <CODE>[int length][payload][long crc32]</CODE>.
+ * A torn record at the end of a segment (from a crash in the middle of an
+ * append) fails its length or checksum test, ends the replay of that segment,
+ * and is cut off so that the segment ends on a clean record boundary.
+ *
+ * Appends use group commit. An append only frames its record into a pending
+ * batch and returns; a flusher thread writes the whole batch and syncs it
+ * with a single <CODE>sync()</CODE>. A caller that needs its change to be
+ * durable calls <CODE>awaitDurable()</CODE>, normally after releasing its
+ * own locks, which returns once the batch holding its last record is on
+ * disk. Records that arrive while a batch is being synced go into the next
+ * one, so under load many changes share a sync. With a commit window, the
+ * flusher also waits up to that long after the first record of a batch for
+ * more to arrive, trading latency for fewer syncs.
+ *
+ * If a batch cannot be written or synced, the segment is cut back to the
+ * end of the last synced batch and the log fails for good: the records of
+ * that batch and of every later one are reported as not durable, and no
+ * more records are accepted until the log is opened again. Appending after
+ * the failed batch would put records behind a frame the replay may stop at,
+ * so they could be lost on restart although they were reported as durable.
+ *
+ * Every record has a position: its segment number and its offset in the
+ * segment, packed into one long. A handler set with <CODE>setApplier()</CODE>
+ * receives each record with its position right after the record is synced,
+ * which lets a structure kept next to the log (such as a
+ * <CODE>MappedItemTable</CODE>) follow it without ever getting ahead of what
+ * is durable.
+ *
+ * @author Zachary King
+ */
+public class MutationLog implements Closeable {
+
+    private static final byte NEW_ITEM = 1;
+    private static final byte QUANTITY_CHANGE = 2;
+    private static final byte REMOVE_ITEM = 3;
+    private static final byte SAVE_USER = 4;
+    private static final byte SALE = 5;
+    private static final byte CART = 6;
+
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    // A log position is the segment number shifted by this many bits, plus
+    // the offset of the record in the segment
+    private static final int SEGMENT_SHIFT = 40;
+    // A batch this large is written without waiting for the commit window
+    private static final int MAX_BATCH_BYTES = 1 << 20;
+
+    private final File directory;
+    private final String baseName;
+    private final long commitWindowMillis;
+    private long segment;
+    private FileOutputStream output;
+    // The length of the current segment up to the end of its last synced batch
+    private long syncedLength;
+    private long pendingBytes;
+    private long oldestPendingTime;
+
+    // Framed records waiting for the flusher, and the tickets that number
+    // them: appendedTicket is the last one handed out, durableTicket the
+    // last one synced
+    private final ByteArrayOutputStream batch = new ByteArrayOutputStream();
+    private long appendedTicket;
+    private long durableTicket;
+    // The first write that failed, and the last ticket synced before it
+    private IOException failure;
+    private long failedAfter;
+    private boolean closed;
+    private Thread flusher;
+    private final ThreadLocal<long[]> lastTicket = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+    // Held while a batch is written, so batches reach the file in order and
+    // the segment is never switched under a write
+    private final Object writeLock = new Object();
+    // Receives the records of each synced batch, until it fails
+    private Handler applier;
+    private Exception applyFailure;
+
+    /**
+     * This interface receives the mutations read back from the log, in the
+     * order they were originally applied. Before each record,
+     * <CODE>position()</CODE> is called with the record's position in the
+     * log; positions grow from record to record, across segments too.
+     */
+    public interface Handler {
+
+        void position(long position);
+
+        void newItem(Item item) throws IOException;
+
+        void quantityChanged(String itemId, int delta) throws IOException;
+
+        void itemRemoved(String itemId) throws IOException;
+
+        void userSaved(User user) throws IOException;
+
+        void sale(Transaction transaction) throws IOException;
+    }
+
+    /**
+     * Constructor initializes a log whose segments are named
+     * <CODE>baseName.N</CODE> inside the given directory. Nothing can be
+     * appended until <CODE>replay()</CODE> has opened the current segment.
+     * @param directory the directory holding the segments
+     * @param baseName the file name shared by all segments
+     * @param commitWindowMillis how long the flusher waits for more records
+     * before syncing a batch; 0 syncs as soon as the previous sync is done
+     */
+    public MutationLog(File directory, String baseName, long commitWindowMillis) {
+        this.directory = directory;
+        this.baseName = baseName;
+        this.commitWindowMillis = commitWindowMillis;
+    }
+
+    /**
+     * Appends the addition of a new item.
+     * @param item the item that was added
+     * @throws IOException
+     */
+    public void logNewItem(Item item) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(NEW_ITEM);
+        RecordCodec.writeItem(record, item);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends a change of quantity for an existing item.
+     * @param itemId the ID of the item
+     * @param delta the (signed) quantity that was added
+     * @throws IOException
+     */
+    public void logQuantityChange(String itemId, int delta) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(QUANTITY_CHANGE);
+        RecordCodec.writeString(record, itemId);
+        RecordCodec.writeVarInt(record, delta);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends the removal of an item.
+     * @param itemId the ID of the removed item
+     * @throws IOException
+     */
+    public void logRemoveItem(String itemId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(REMOVE_ITEM);
+        RecordCodec.writeString(record, itemId);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends the full state of a new or edited user.
+     * @param user the user that was added or edited
+     * @throws IOException
+     */
+    public void logUser(User user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(SAVE_USER);
+        RecordCodec.writeUser(record, user);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends a sale. Replaying a sale both records the transaction and
+     * removes the sold quantity from the item.
+     * @param transaction the completed transaction
+     * @throws IOException
+     */
+    public void logSale(Transaction transaction) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(SALE);
+        RecordCodec.writeTransaction(record, transaction);
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends the sales of a cart as a single record, so a crash can never
+     * leave only some of them in the log. Each sale is replayed as if it
+     * had been logged with <CODE>logSale()</CODE>.
+     * @param transactions the completed transactions
+     * @throws IOException
+     */
+    public void logCart(List<Transaction> transactions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(CART);
+        RecordCodec.writeVarInt(record, transactions.size());
+        for (Transaction transaction : transactions) {
+            RecordCodec.writeTransaction(record, transaction);
+        }
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Reads every complete record from segment <CODE>firstSegment</CODE>
+     * onwards and hands it to the given handler. Older segments are already
+     * covered by the snapshot and are deleted. A torn or corrupt tail is
+     * truncated away. Afterwards the newest segment is opened for appending
+     * and the flusher is started.
+     * @param firstSegment the first segment not covered by the snapshot
+     * @param handler receives the replayed mutations
+     * @return the number of records replayed
+     * @throws IOException
+     */
+    public synchronized int replay(long firstSegment, Handler handler) throws IOException {
+        deleteSegmentsBefore(firstSegment);
+        int count = 0;
+        segment = firstSegment;
+        for (long number : listSegments()) {
+            File file = segmentFile(number);
+            count += replaySegment(number, file, handler);
+            pendingBytes += file.length();
+            segment = number;
+        }
+        if (count > 0) {
+            oldestPendingTime = System.currentTimeMillis();
+        }
+        output = new FileOutputStream(segmentFile(segment), true);
+        syncedLength = segmentFile(segment).length();
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushBatches();
+            }
+        }, "Mutation log flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        return count;
+    }
+
+    /**
+     * Closes the current segment and starts a new one. Every record appended
+     * before this call lives in a segment older than the returned number:
+     * the pending batch is synced to the current segment first.
+     * @return the number of the new segment
+     * @throws IOException
+     */
+    public long rotate() throws IOException {
+        synchronized (writeLock) {
+            synchronized (this) {
+                flush();
+                output.close();
+                segment++;
+                output = new FileOutputStream(segmentFile(segment), true);
+                syncedLength = segmentFile(segment).length();
+                pendingBytes = 0;
+                oldestPendingTime = 0;
+                return segment;
+            }
+        }
+    }
+
+    /**
+     * Waits until every record this thread has appended is synced to disk.
+     * @throws IOException if the log failed before one of them was synced
+     */
+    public void awaitDurable() throws IOException {
+        long ticket = lastTicket.get()[0];
+        synchronized (this) {
+            while (durableTicket < ticket && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the log to be synced");
+                }
+            }
+            if (failure != null && ticket > failedAfter) {
+                throw new IOException("Logged change could not be synced: " + failure, failure);
+            }
+        }
+    }
+
+    /**
+     * Deletes every segment older than the given one. Called once a snapshot
+     * covering those segments has been written.
+     * @param firstSegment the first segment to keep
+     */
+    public synchronized void deleteSegmentsBefore(long firstSegment) {
+        for (long number : listSegments()) {
+            if (number < firstSegment && !segmentFile(number).delete()) {
+                System.err.println("Could not delete log segment " + segmentFile(number));
+            }
+        }
+    }
+
+    /**
+     * Returns the position the next record will be logged at. Every record
+     * logged so far has a lower position.
+     * @return the position
+     */
+    public long getEndPosition() {
+        synchronized (writeLock) {
+            return position(segment, syncedLength);
+        }
+    }
+
+    /**
+     * Sets the handler every record is applied to once it has been synced,
+     * in log order, on the thread that synced it. If the handler throws,
+     * the error is kept for <CODE>getApplyFailure()</CODE> and no further
+     * record is applied.
+     * @param handler the handler, or null to stop applying records
+     */
+    public void setApplier(Handler handler) {
+        synchronized (writeLock) {
+            applier = handler;
+        }
+    }
+
+    /**
+     * Returns the error that stopped records from being applied to the
+     * handler set with <CODE>setApplier()</CODE>, or null.
+     * @return the error
+     */
+    public Exception getApplyFailure() {
+        synchronized (writeLock) {
+            return applyFailure;
+        }
+    }
+
+    /**
+     * Returns the number of bytes logged since the last <CODE>rotate()</CODE>.
+     * @return the pending log size
+     */
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Returns the time the oldest record since the last <CODE>rotate()</CODE>
+     * was logged, or 0 if there is none.
+     * @return the time in milliseconds
+     */
+    public synchronized long getOldestPendingTime() {
+        return oldestPendingTime;
+    }
+
+    /**
+     * Syncs the pending batch, stops the flusher and closes the current
+     * segment.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+                if (output != null) {
+                    try {
+                        flush();
+                    } finally {
+                        output.close();
+                    }
+                }
+            }
+        }
+    }
+
+    private int replaySegment(long number, File file, Handler handler) throws IOException {
+        int count = 0;
+        long validLength = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = input.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    input.readFully(payload);
+                    if (input.readLong() != checksum(payload)) {
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    break;
+                }
+                handler.position(position(number, validLength));
+                apply(payload, handler);
+                validLength += 4 + payload.length + 8;
+                count++;
+            }
+        } finally {
+            input.close();
+        }
+
+        if (validLength < file.length()) {
+            System.err.println("Log segment " + file + " has a torn tail; discarding "
+                    + (file.length() - validLength) + " bytes.");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(validLength);
+            } finally {
+                raf.close();
+            }
+        }
+        return count;
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, baseName + "." + number);
+    }
+
+    private long[] listSegments() {
+        String[] names = directory.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] numbers = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith(baseName + ".")) {
+                try {
+                    numbers[count] = Long.parseLong(name.substring(baseName.length() + 1));
+                    count++;
+                } catch (NumberFormatException ex) {
+                    // Not a segment
+                }
+            }
+        }
+        numbers = Arrays.copyOf(numbers, count);
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Adds a record to the pending batch and wakes the flusher. The record
+     * is durable once <CODE>awaitDurable()</CODE> returns.
+     */
+    private void append(byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 12);
+        DataOutputStream frame = new DataOutputStream(bytes);
+        frame.writeInt(payload.length);
+        frame.write(payload);
+        frame.writeLong(checksum(payload));
+        long ticket;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Mutation log is closed");
+            }
+            if (failure != null) {
+                throw new IOException("Mutation log has failed: " + failure, failure);
+            }
+            bytes.writeTo(batch);
+            ticket = ++appendedTicket;
+            if (oldestPendingTime == 0) {
+                oldestPendingTime = System.currentTimeMillis();
+            }
+            pendingBytes += bytes.size();
+            notifyAll();
+        }
+        lastTicket.get()[0] = ticket;
+    }
+
+    /**
+     * Runs on the flusher thread: waits for records, gives a batch the
+     * commit window to fill up, then writes and syncs it.
+     */
+    private void flushBatches() {
+        while (true) {
+            synchronized (this) {
+                try {
+                    while (!closed && batch.size() == 0) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    long deadline = System.currentTimeMillis() + commitWindowMillis;
+                    long remaining = commitWindowMillis;
+                    while (!closed && remaining > 0 && batch.size() < MAX_BATCH_BYTES) {
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+            synchronized (writeLock) {
+                try {
+                    flush();
+                } catch (IOException ex) {
+                    System.err.println(ex.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes and syncs the pending batch, then releases everyone waiting for
+     * it. Called holding <CODE>writeLock</CODE>; new records keep coming into
+     * the next batch while this one is synced. If the write fails, whatever
+     * reached the segment is cut off again and the log fails.
+     * @throws IOException if the batch could not be written, or the log has
+     * already failed
+     */
+    private void flush() throws IOException {
+        byte[] records;
+        long ticket;
+        FileOutputStream out;
+        synchronized (this) {
+            if (failure != null) {
+                batch.reset();
+                throw new IOException("Mutation log has failed: " + failure, failure);
+            }
+            if (batch.size() == 0) {
+                return;
+            }
+            records = batch.toByteArray();
+            batch.reset();
+            ticket = appendedTicket;
+            out = output;
+        }
+        try {
+            out.write(records);
+            out.getFD().sync();
+        } catch (IOException ex) {
+            try {
+                out.getChannel().truncate(syncedLength);
+            } catch (IOException truncateError) {
+                // Replay cuts a torn tail off; nothing is appended after it
+                System.err.println(truncateError.toString());
+            }
+            synchronized (this) {
+                failure = ex;
+                failedAfter = durableTicket;
+                batch.reset();
+                notifyAll();
+            }
+            throw ex;
+        }
+        long batchStart = syncedLength;
+        syncedLength += records.length;
+        synchronized (this) {
+            durableTicket = ticket;
+            notifyAll();
+        }
+        if (applier != null) {
+            applyBatch(records, position(segment, batchStart));
+        }
+    }
+
+    /**
+     * Hands the records of a synced batch to the applier. Called holding
+     * <CODE>writeLock</CODE>, so batches are applied in log order.
+     */
+    private void applyBatch(byte[] records, long start) {
+        try {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(records));
+            int offset = 0;
+            while (offset < records.length) {
+                byte[] payload = new byte[input.readInt()];
+                input.readFully(payload);
+                input.readLong();
+                applier.position(start + offset);
+                apply(payload, applier);
+                offset += 4 + payload.length + 8;
+            }
+        } catch (Exception ex) {
+            System.err.println(ex.toString());
+            applyFailure = ex;
+            applier = null;
+        }
+    }
+
+    /**
+     * Returns the position of the byte at the given offset of a segment.
+     */
+    private static long position(long segmentNumber, long offset) {
+        return segmentNumber << SEGMENT_SHIFT | offset;
+    }
+
+    private static void apply(byte[] payload, Handler handler) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = record.readByte();
+        switch (op) {
+            case NEW_ITEM:
+                handler.newItem(RecordCodec.readItem(record));
+                break;
+            case QUANTITY_CHANGE:
+                handler.quantityChanged(RecordCodec.readString(record), RecordCodec.readVarInt(record));
+                break;
+            case REMOVE_ITEM:
+                handler.itemRemoved(RecordCodec.readString(record));
+                break;
+            case SAVE_USER:
+                handler.userSaved(RecordCodec.readUser(record));
+                break;
+            case SALE:
+                handler.sale(RecordCodec.readTransaction(record));
+                break;
+            case CART:
+                // Decode the whole cart before applying any of it
+                Transaction[] transactions = new Transaction[RecordCodec.readVarInt(record)];
+                for (int i = 0; i < transactions.length; i++) {
+                    transactions[i] = RecordCodec.readTransaction(record);
+                }
+                for (Transaction transaction : transactions) {
+                    handler.sale(transaction);
+                }
+                break;
+            default:
+                throw new IOException("Unknown mutation log record type " + op);
+        }
+    }
+
+    private static long checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+}
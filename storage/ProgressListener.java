@@ -0,0 +1,29 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+/**
+ * This interface receives progress reports from long running store
+ * operations such as writing the database. It may be called from a background
+ * thread.
+ *
+ * A listener may abandon the operation by throwing a
+ * <CODE>CancellationException</CODE> from a report of less than 100
+ * percent. Operations only report progress at points where stopping leaves
+ * the store and its files as they were.
+ *
+ * @author Zachary King
+ */
+public interface ProgressListener {
+
+    /**
+     * Reports how far the operation has come.
+     * @param percent a value between 0 and 100
+     * @param note a short description of the current step
+     */
+    void progress(int percent, String note);
+}
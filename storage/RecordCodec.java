@@ -0,0 +1,280 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Appliances;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.items.SmallHardwareItems;
+import hardwarestoregui.users.Customer;
+import hardwarestoregui.users.Employee;
+import hardwarestoregui.users.User;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * This class is the compact binary record format for items, users and
+ * transactions, used by both the snapshot file and the mutation log. It
+ * replaces default Java serialization, which writes class descriptors and
+ * field names and reflects over every field.
+ *
+ * Integers are written as variable-length "varints" (7 bits per byte, zigzag
+ * encoded so small negative numbers stay small), strings as a varint length
+ * followed by UTF-8 bytes, and prices and salaries as a whole number of cents.
+ * Every record starts with a tag byte that tells the subtype apart.
+ *
+ * <CODE>VERSION</CODE> identifies this layout. Files store it in their header
+ * so a later layout can still read records written by this one.
+ *
+ * @author Zachary King
+ */
+public final class RecordCodec {
+
+    /**
+     * The version of the record layout written by this class.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte SMALL_HARDWARE_ITEM = 1;
+    private static final byte APPLIANCE = 2;
+    private static final byte CUSTOMER = 1;
+    private static final byte EMPLOYEE = 2;
+
+    private RecordCodec() {
+    }
+
+    /**
+     * Writes an item record.
+     * @param out the destination
+     * @param item the item to write
+     * @throws IOException
+     */
+    public static void writeItem(DataOutput out, Item item) throws IOException {
+        if (item instanceof Appliances) {
+            Appliances appliance = (Appliances) item;
+            out.writeByte(APPLIANCE);
+            writeItemFields(out, item);
+            writeString(out, appliance.getBrand());
+            writeString(out, appliance.getType());
+        } else {
+            out.writeByte(SMALL_HARDWARE_ITEM);
+            writeItemFields(out, item);
+            writeString(out, ((SmallHardwareItems) item).getCategory());
+        }
+    }
+
+    /**
+     * Reads an item record.
+     * @param in the source
+     * @return the item
+     * @throws IOException
+     */
+    public static Item readItem(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        String idNumber = readString(in);
+        String name = readString(in);
+        int quantity = readVarInt(in);
+        float price = readCents(in);
+        switch (tag) {
+            case SMALL_HARDWARE_ITEM:
+                return new SmallHardwareItems(idNumber, name, quantity, price, readString(in));
+            case APPLIANCE:
+                return new Appliances(idNumber, name, quantity, price, readString(in), readString(in));
+            default:
+                throw new IOException("Unknown item record tag " + tag);
+        }
+    }
+
+    /**
+     * Writes a user record.
+     * @param out the destination
+     * @param user the user to write
+     * @throws IOException
+     */
+    public static void writeUser(DataOutput out, User user) throws IOException {
+        out.writeByte(user.isEmployee ? EMPLOYEE : CUSTOMER);
+        writeVarInt(out, user.getId());
+        writeString(out, user.getFirstName());
+        writeString(out, user.getLastName());
+        if (user.isEmployee) {
+            Employee employee = (Employee) user;
+            writeVarInt(out, employee.getSocialSecurityNumber());
+            writeCents(out, employee.getMonthlySalary());
+        } else {
+            Customer customer = (Customer) user;
+            writeString(out, customer.getPhoneNumber());
+            writeString(out, customer.getAddress());
+        }
+    }
+
+    /**
+     * Reads a user record.
+     * @param in the source
+     * @return the user
+     * @throws IOException
+     */
+    public static User readUser(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        int id = readVarInt(in);
+        String firstName = readString(in);
+        String lastName = readString(in);
+        switch (tag) {
+            case CUSTOMER:
+                return new Customer(id, firstName, lastName, readString(in), readString(in));
+            case EMPLOYEE:
+                return new Employee(id, firstName, lastName, readVarInt(in), readCents(in));
+            default:
+                throw new IOException("Unknown user record tag " + tag);
+        }
+    }
+
+    /**
+     * Writes a transaction record.
+     * @param out the destination
+     * @param transaction the transaction to write
+     * @throws IOException
+     */
+    public static void writeTransaction(DataOutput out, Transaction transaction) throws IOException {
+        writeString(out, transaction.getItemID());
+        writeVarLong(out, transaction.getsaleDate().getTime());
+        writeVarInt(out, transaction.getSaleQuantity());
+        writeVarInt(out, transaction.getCustomerId());
+        writeVarInt(out, transaction.getEmployeeId());
+    }
+
+    /**
+     * Reads a transaction record.
+     * @param in the source
+     * @return the transaction
+     * @throws IOException
+     */
+    public static Transaction readTransaction(DataInput in) throws IOException {
+        return new Transaction(readString(in), new Date(readVarLong(in)),
+                readVarInt(in), readVarInt(in), readVarInt(in));
+    }
+
+    /**
+     * Writes a zigzag encoded varint.
+     * @param out the destination
+     * @param value the value
+     * @throws IOException
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value);
+    }
+
+    /**
+     * Reads a zigzag encoded varint.
+     * @param in the source
+     * @return the value
+     * @throws IOException
+     */
+    public static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IOException("Varint out of range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Writes a zigzag encoded variable-length long.
+     * @param out the destination
+     * @param value the value
+     * @throws IOException
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.writeByte((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.writeByte((int) zigzag);
+    }
+
+    /**
+     * Reads a zigzag encoded variable-length long.
+     * @param in the source
+     * @return the value
+     * @throws IOException
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Writes a possibly null string as a varint length (0 for null, length
+     * plus one otherwise) followed by its UTF-8 bytes.
+     * @param out the destination
+     * @param value the string
+     * @throws IOException
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by <CODE>writeString()</CODE>.
+     * @param in the source
+     * @return the string, or null
+     * @throws IOException
+     */
+    public static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes an amount of money as a whole number of cents.
+     * @param out the destination
+     * @param amount the amount
+     * @throws IOException
+     */
+    public static void writeCents(DataOutput out, float amount) throws IOException {
+        writeVarLong(out, Math.round(amount * 100.0));
+    }
+
+    /**
+     * Reads an amount of money written by <CODE>writeCents()</CODE>.
+     * @param in the source
+     * @return the amount
+     * @throws IOException
+     */
+    public static float readCents(DataInput in) throws IOException {
+        return (float) (readVarLong(in) / 100.0);
+    }
+
+    private static void writeItemFields(DataOutput out, Item item) throws IOException {
+        writeString(out, item.getIdNumber());
+        writeString(out, item.getName());
+        writeVarInt(out, item.getQuantity());
+        writeCents(out, item.getPrice());
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.users.User;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class reads and writes the snapshot file ("database.ser"). The file
+ * starts with the <CODE>MAGIC</CODE> bytes and the format version, followed by
+ * the user ID counter, the first uncovered log segment, whether the items
+ * are kept in the <CODE>MappedItemTable</CODE> instead, the items (unless
+ * they are) and users (each list prefixed by its length, in the
+ * <CODE>RecordCodec</CODE> format) and the number of transactions in the
+ * <CODE>TransactionFile</CODE>. A snapshot without items has null for them.
+ *
+ * Version 2 of the format had no item table flag and always held the items.
+ *
+ * Version 1 of the format stored the transactions inline instead of their
+ * count; those are returned in <CODE>getTransactions()</CODE> so the caller
+ * can move them into the transaction file.
+ *
+ * Files written by older versions of the program with default Java
+ * serialization are recognized by their stream header and still read, so an
+ * existing database is converted the first time it is saved again (or by
+ * running <CODE>DatabaseConverter</CODE>).
+ *
+ * @author Zachary King
+ */
+public final class SnapshotFile {
+
+    private static final byte[] MAGIC = {'H', 'W', 'S', 'D'};
+    private static final int INLINE_TRANSACTIONS_VERSION = 1;
+    private static final int ITEMS_ALWAYS_VERSION = 2;
+    private static final int VERSION = 3;
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Reads a snapshot in either the current or the legacy format.
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException
+     */
+    public static StoreSnapshot read(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        try {
+            input.mark(MAGIC.length);
+            byte[] header = new byte[MAGIC.length];
+            input.readFully(header);
+            if (!Arrays.equals(header, MAGIC)) {
+                input.reset();
+                return readLegacy(input);
+            }
+            int version = RecordCodec.readVarInt(input);
+            if (version != VERSION && version != ITEMS_ALWAYS_VERSION && version != INLINE_TRANSACTIONS_VERSION) {
+                throw new IOException("Unsupported database version " + version);
+            }
+            int userIdCounter = RecordCodec.readVarInt(input);
+            long logSegment = RecordCodec.readVarLong(input);
+
+            ArrayList<Item> items = null;
+            if (version != VERSION || !input.readBoolean()) {
+                int count = RecordCodec.readVarInt(input);
+                items = new ArrayList<Item>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(RecordCodec.readItem(input));
+                }
+            }
+            int count = RecordCodec.readVarInt(input);
+            ArrayList<User> users = new ArrayList<User>(count);
+            for (int i = 0; i < count; i++) {
+                users.add(RecordCodec.readUser(input));
+            }
+            ArrayList<Transaction> transactions = new ArrayList<Transaction>();
+            long transactionCount = 0;
+            if (version == INLINE_TRANSACTIONS_VERSION) {
+                count = RecordCodec.readVarInt(input);
+                transactions.ensureCapacity(count);
+                for (int i = 0; i < count; i++) {
+                    transactions.add(RecordCodec.readTransaction(input));
+                }
+            } else {
+                transactionCount = RecordCodec.readVarLong(input);
+            }
+            return new StoreSnapshot(items, users, transactions, transactionCount, userIdCounter, logSegment);
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, syncs it to disk and then
+     * atomically renames it over the given file, so a crash at any point
+     * leaves either the old or the new snapshot, never a partial one. The
+     * snapshot's transactions must already be in the transaction file.
+     * @param snapshot the snapshot to write
+     * @param file the snapshot file
+     * @param listener receives progress reports, or null
+     * @throws IOException
+     */
+    public static void write(StoreSnapshot snapshot, File file, ProgressListener listener) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            boolean itemsInTable = snapshot.getItems() == null;
+            long total = (itemsInTable ? 0L : snapshot.getItems().size()) + snapshot.getUsers().size();
+            long written = 0;
+
+            output.write(MAGIC);
+            RecordCodec.writeVarInt(output, VERSION);
+            RecordCodec.writeVarInt(output, snapshot.getUserIdCounter());
+            RecordCodec.writeVarLong(output, snapshot.getLogSegment());
+
+            output.writeBoolean(itemsInTable);
+            if (!itemsInTable) {
+                report(listener, 10, "Writing items...");
+                RecordCodec.writeVarInt(output, snapshot.getItems().size());
+                for (Item item : snapshot.getItems()) {
+                    RecordCodec.writeItem(output, item);
+                    written = progress(listener, written, total);
+                }
+            }
+            report(listener, (int) (10 + 80 * written / Math.max(total, 1)), "Writing users...");
+            RecordCodec.writeVarInt(output, snapshot.getUsers().size());
+            for (User user : snapshot.getUsers()) {
+                RecordCodec.writeUser(output, user);
+                written = progress(listener, written, total);
+            }
+            RecordCodec.writeVarLong(output, snapshot.getTransactionCount());
+            output.flush();
+
+            report(listener, 90, "Syncing to disk...");
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        Files.move(tempFile.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Reads a snapshot written with default Java serialization.
+     * @param input the stream, positioned at the start of the file
+     * @return the snapshot
+     * @throws IOException
+     */
+    @SuppressWarnings("unchecked")
+    private static StoreSnapshot readLegacy(InputStream input) throws IOException {
+        ObjectInputStream objects = new ObjectInputStream(input);
+        try {
+            ArrayList<Item> items = (ArrayList<Item>) objects.readObject();
+            ArrayList<User> users = (ArrayList<User>) objects.readObject();
+            ArrayList<Transaction> transactions = (ArrayList<Transaction>) objects.readObject();
+            int userIdCounter = objects.readInt();
+            long logSegment = 1;
+            try {
+                logSegment = objects.readLong();
+            } catch (EOFException ex) {
+                // Written before the log was segmented
+            }
+            return new StoreSnapshot(items, users, transactions, 0, userIdCounter, logSegment);
+        } catch (ClassNotFoundException ex) {
+            throw new IOException(ex.toString());
+        }
+    }
+
+    private static long progress(ProgressListener listener, long written, long total) {
+        written++;
+        if (written % PROGRESS_INTERVAL == 0) {
+            report(listener, (int) (10 + 80 * written / total), "Writing records...");
+        }
+        return written;
+    }
+
+    private static void report(ProgressListener listener, int percent, String note) {
+        if (listener != null) {
+            listener.progress(percent, note);
+        }
+    }
+
+    /**
+     * Syncs a directory so that a rename inside it survives a crash. Not every
+     * platform allows opening a directory, so failures are ignored.
+     * @param directory the directory to sync
+     */
+    private static void syncDirectory(File directory) {
+        try {
+            FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (IOException ex) {
+            // Best effort only
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Appliances;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.items.SmallHardwareItems;
+import hardwarestoregui.users.Customer;
+import hardwarestoregui.users.Employee;
+import hardwarestoregui.users.User;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * This class is a storage engine backed by an embedded SQL database file,
+ * reached through JDBC. Every change is written to its table as it happens
+ * (a sale updates the item and inserts the transaction in one database
+ * transaction), so a save has nothing left to write. Transactions are read
+ * back by position through the <CODE>transactions</CODE> table's primary key,
+ * and are also indexed by item ID.
+ *
+ * Only portable SQL is used, so any embedded database with a JDBC driver that
+ * understands <CODE>CREATE TABLE IF NOT EXISTS</CODE> works, for example
+ * SQLite ("jdbc:sqlite:database.db") or H2 ("jdbc:h2:./database"). The driver
+ * must be on the classpath. Money is stored as a whole number of cents.
+ *
+ * @author Zachary King
+ */
+public class SqlStorageEngine implements StorageEngine {
+
+    private static final int SMALL_HARDWARE_ITEM = 1;
+    private static final int APPLIANCE = 2;
+    private static final int CUSTOMER = 1;
+    private static final int EMPLOYEE = 2;
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS items (id VARCHAR(64) PRIMARY KEY, kind INTEGER NOT NULL,"
+                + " name VARCHAR(255), quantity INTEGER NOT NULL, price_cents BIGINT NOT NULL,"
+                + " category VARCHAR(255), brand VARCHAR(255), appliance_type VARCHAR(255))",
+        "CREATE TABLE IF NOT EXISTS users (id INTEGER PRIMARY KEY, kind INTEGER NOT NULL,"
+                + " first_name VARCHAR(255), last_name VARCHAR(255), phone_number VARCHAR(255),"
+                + " address VARCHAR(255), ssn INTEGER, salary_cents BIGINT)",
+        "CREATE TABLE IF NOT EXISTS transactions (position BIGINT PRIMARY KEY, item_id VARCHAR(64),"
+                + " sale_date BIGINT NOT NULL, quantity INTEGER NOT NULL, customer_id INTEGER,"
+                + " employee_id INTEGER)",
+        "CREATE INDEX IF NOT EXISTS transactions_item ON transactions (item_id)"
+    };
+
+    private final String url;
+    private Connection connection;
+    private PreparedStatement insertItem;
+    private PreparedStatement updateQuantity;
+    private PreparedStatement deleteItem;
+    private PreparedStatement updateUser;
+    private PreparedStatement insertUser;
+    private PreparedStatement insertTransaction;
+    private PreparedStatement selectTransactions;
+    private TransactionHistory transactionHistory;
+
+    /**
+     * Constructor initializes an engine for the given database.
+     * @param url the JDBC URL of the database
+     */
+    public SqlStorageEngine(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Connects to the database, creates the tables if they are missing and
+     * reads the items and users.
+     * @return the loaded store
+     * @throws IOException if the database cannot be opened or read
+     */
+    @Override
+    public synchronized StoreSnapshot load() throws IOException {
+        try {
+            connection = DriverManager.getConnection(url);
+            Statement statement = connection.createStatement();
+            try {
+                for (String sql : SCHEMA) {
+                    statement.executeUpdate(sql);
+                }
+            } finally {
+                statement.close();
+            }
+            insertItem = connection.prepareStatement("INSERT INTO items"
+                    + " (id, kind, name, quantity, price_cents, category, brand, appliance_type)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            updateQuantity = connection.prepareStatement("UPDATE items SET quantity = ? WHERE id = ?");
+            deleteItem = connection.prepareStatement("DELETE FROM items WHERE id = ?");
+            updateUser = connection.prepareStatement("UPDATE users SET kind = ?, first_name = ?, last_name = ?,"
+                    + " phone_number = ?, address = ?, ssn = ?, salary_cents = ? WHERE id = ?");
+            insertUser = connection.prepareStatement("INSERT INTO users"
+                    + " (kind, first_name, last_name, phone_number, address, ssn, salary_cents, id)"
+                    + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+            insertTransaction = connection.prepareStatement("INSERT INTO transactions"
+                    + " (position, item_id, sale_date, quantity, customer_id, employee_id)"
+                    + " VALUES (?, ?, ?, ?, ?, ?)");
+            selectTransactions = connection.prepareStatement("SELECT item_id, sale_date, quantity, customer_id,"
+                    + " employee_id FROM transactions WHERE position >= ? AND position < ? ORDER BY position");
+
+            ArrayList<Item> items = readItems();
+            ArrayList<User> users = readUsers();
+            int userIdCounter = 1;
+            for (User user : users) {
+                userIdCounter = Math.max(userIdCounter, user.getId() + 1);
+            }
+            TransactionArchive archive = new SqlTransactionArchive();
+            long transactionCount = archive.size();
+            transactionHistory = new TransactionHistory(archive, transactionCount);
+            return new StoreSnapshot(items, users, new ArrayList<Transaction>(), transactionCount, userIdCounter, 0);
+        } catch (SQLException ex) {
+            throw new IOException("Cannot open " + url + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public TransactionHistory getTransactionHistory() {
+        return transactionHistory;
+    }
+
+    @Override
+    public synchronized void itemAdded(Item item) throws IOException {
+        try {
+            insertItem.setString(1, item.getIdNumber());
+            insertItem.setString(3, item.getName());
+            insertItem.setInt(4, item.getQuantity());
+            insertItem.setLong(5, cents(item.getPrice()));
+            if (item instanceof Appliances) {
+                Appliances appliance = (Appliances) item;
+                insertItem.setInt(2, APPLIANCE);
+                insertItem.setString(6, null);
+                insertItem.setString(7, appliance.getBrand());
+                insertItem.setString(8, appliance.getType());
+            } else {
+                insertItem.setInt(2, SMALL_HARDWARE_ITEM);
+                insertItem.setString(6, ((SmallHardwareItems) item).getCategory());
+                insertItem.setString(7, null);
+                insertItem.setString(8, null);
+            }
+            insertItem.executeUpdate();
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void quantityChanged(Item item, int delta) throws IOException {
+        try {
+            setQuantity(item, item.getQuantity() + delta);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public synchronized void itemRemoved(Item item) throws IOException {
+        try {
+            deleteItem.setString(1, item.getIdNumber());
+            deleteItem.executeUpdate();
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Updates the user's row, or inserts one if the user is new.
+     * @param user the user's new state
+     * @throws IOException
+     */
+    @Override
+    public synchronized void userSaved(User user) throws IOException {
+        try {
+            setUserFields(updateUser, user);
+            if (updateUser.executeUpdate() == 0) {
+                setUserFields(insertUser, user);
+                insertUser.executeUpdate();
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Inserts the transaction and updates the item's quantity in a single
+     * database transaction.
+     * @param transaction the new transaction
+     * @param item the item sold, still holding its old quantity
+     * @throws IOException
+     */
+    @Override
+    public void saleRecorded(Transaction transaction, Item item) throws IOException {
+        // Asked before locking the engine, as the history locks itself before
+        // reading from the engine
+        long position = transactionHistory.size();
+        synchronized (this) {
+            try {
+                connection.setAutoCommit(false);
+                try {
+                    insertTransaction(position, transaction);
+                    setQuantity(item, item.getQuantity() - transaction.getSaleQuantity());
+                    connection.commit();
+                } catch (SQLException ex) {
+                    connection.rollback();
+                    throw ex;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Inserts the transactions and updates the items' quantities in a single
+     * database transaction.
+     * @param transactions the new transactions
+     * @param items the item sold by each transaction, still holding its old
+     * quantity
+     * @throws IOException
+     */
+    @Override
+    public void cartRecorded(List<Transaction> transactions, List<Item> items) throws IOException {
+        long position = transactionHistory.size();
+        synchronized (this) {
+            try {
+                connection.setAutoCommit(false);
+                try {
+                    for (int i = 0; i < transactions.size(); i++) {
+                        Transaction transaction = transactions.get(i);
+                        Item item = items.get(i);
+                        insertTransaction(position + i, transaction);
+                        setQuantity(item, item.getQuantity() - transaction.getSaleQuantity());
+                    }
+                    connection.commit();
+                } catch (SQLException ex) {
+                    connection.rollback();
+                    throw ex;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Every change is committed as it is recorded, so there is nothing to
+     * wait for.
+     */
+    @Override
+    public void awaitDurable() {
+    }
+
+    /**
+     * Every change is already in the database, so nothing has to be prepared.
+     * @return 0
+     */
+    /**
+     * Returns false: the items table is updated with every change.
+     * @return false
+     */
+    @Override
+    public boolean savesItems() {
+        return false;
+    }
+
+    @Override
+    public long beginSave() {
+        return 0;
+    }
+
+    /**
+     * The snapshot's transactions were inserted as they were sold, so the
+     * history can start reading them from the database.
+     * @param snapshot the snapshot
+     * @param listener receives progress reports, or null
+     * @return true
+     */
+    @Override
+    public boolean save(StoreSnapshot snapshot, ProgressListener listener) {
+        transactionHistory.markArchived(snapshot.getTransactions().size());
+        return true;
+    }
+
+    /**
+     * Returns true once a full page of transactions is only being read from
+     * memory, so saving keeps the in-memory part of the history small.
+     * @return whether a save is due
+     */
+    @Override
+    public boolean isSaveDue() {
+        return transactionHistory.size() - transactionHistory.getArchivedCount() >= TransactionHistory.PAGE_SIZE;
+    }
+
+    /**
+     * Closes the connection.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            connection.close();
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private ArrayList<Item> readItems() throws SQLException {
+        ArrayList<Item> items = new ArrayList<Item>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery("SELECT id, kind, name, quantity, price_cents, category,"
+                    + " brand, appliance_type FROM items ORDER BY id");
+            while (rows.next()) {
+                String id = rows.getString(1);
+                String name = rows.getString(3);
+                int quantity = rows.getInt(4);
+                float price = (float) (rows.getLong(5) / 100.0);
+                if (rows.getInt(2) == APPLIANCE) {
+                    items.add(new Appliances(id, name, quantity, price, rows.getString(7), rows.getString(8)));
+                } else {
+                    items.add(new SmallHardwareItems(id, name, quantity, price, rows.getString(6)));
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        return items;
+    }
+
+    private ArrayList<User> readUsers() throws SQLException {
+        ArrayList<User> users = new ArrayList<User>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rows = statement.executeQuery("SELECT id, kind, first_name, last_name, phone_number,"
+                    + " address, ssn, salary_cents FROM users ORDER BY id");
+            while (rows.next()) {
+                int id = rows.getInt(1);
+                if (rows.getInt(2) == EMPLOYEE) {
+                    users.add(new Employee(id, rows.getString(3), rows.getString(4), rows.getInt(7),
+                            (float) (rows.getLong(8) / 100.0)));
+                } else {
+                    users.add(new Customer(id, rows.getString(3), rows.getString(4), rows.getString(5),
+                            rows.getString(6)));
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        return users;
+    }
+
+    private void setQuantity(Item item, int quantity) throws SQLException {
+        updateQuantity.setInt(1, quantity);
+        updateQuantity.setString(2, item.getIdNumber());
+        updateQuantity.executeUpdate();
+    }
+
+    private static void setUserFields(PreparedStatement statement, User user) throws SQLException {
+        statement.setString(2, user.getFirstName());
+        statement.setString(3, user.getLastName());
+        statement.setInt(8, user.getId());
+        if (user instanceof Employee) {
+            Employee employee = (Employee) user;
+            statement.setInt(1, EMPLOYEE);
+            statement.setString(4, null);
+            statement.setString(5, null);
+            statement.setInt(6, employee.getSocialSecurityNumber());
+            statement.setLong(7, cents(employee.getMonthlySalary()));
+        } else {
+            Customer customer = (Customer) user;
+            statement.setInt(1, CUSTOMER);
+            statement.setString(4, customer.getPhoneNumber());
+            statement.setString(5, customer.getAddress());
+            statement.setInt(6, 0);
+            statement.setLong(7, 0);
+        }
+    }
+
+    private void insertTransaction(long position, Transaction transaction) throws SQLException {
+        insertTransaction.setLong(1, position);
+        insertTransaction.setString(2, transaction.getItemID());
+        insertTransaction.setLong(3, transaction.getsaleDate().getTime());
+        insertTransaction.setInt(4, transaction.getSaleQuantity());
+        insertTransaction.setInt(5, transaction.getCustomerId());
+        insertTransaction.setInt(6, transaction.getEmployeeId());
+        insertTransaction.executeUpdate();
+    }
+
+    private static long cents(float amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    /**
+     * The <CODE>transactions</CODE> table, addressed by position.
+     */
+    private class SqlTransactionArchive implements TransactionArchive {
+
+        @Override
+        public long size() throws IOException {
+            synchronized (SqlStorageEngine.this) {
+                try {
+                    Statement statement = connection.createStatement();
+                    try {
+                        ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM transactions");
+                        rows.next();
+                        return rows.getLong(1);
+                    } finally {
+                        statement.close();
+                    }
+                } catch (SQLException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        }
+
+        @Override
+        public List<Transaction> read(long first, int count) throws IOException {
+            synchronized (SqlStorageEngine.this) {
+                List<Transaction> transactions = new ArrayList<Transaction>(Math.max(0, count));
+                try {
+                    selectTransactions.setLong(1, first);
+                    selectTransactions.setLong(2, first + count);
+                    ResultSet rows = selectTransactions.executeQuery();
+                    try {
+                        while (rows.next()) {
+                            transactions.add(new Transaction(rows.getString(1), new Date(rows.getLong(2)),
+                                    rows.getInt(3), rows.getInt(4), rows.getInt(5)));
+                        }
+                    } finally {
+                        rows.close();
+                    }
+                } catch (SQLException ex) {
+                    throw new IOException(ex);
+                }
+                return transactions;
+            }
+        }
+
+        @Override
+        public void append(List<Transaction> transactions) throws IOException {
+            synchronized (SqlStorageEngine.this) {
+                try {
+                    long position = size();
+                    for (Transaction transaction : transactions) {
+                        insertTransaction(position++, transaction);
+                    }
+                } catch (SQLException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        }
+
+        @Override
+        public void truncate(long count) throws IOException {
+            synchronized (SqlStorageEngine.this) {
+                try {
+                    PreparedStatement delete = connection.prepareStatement(
+                            "DELETE FROM transactions WHERE position >= ?");
+                    try {
+                        delete.setLong(1, count);
+                        delete.executeUpdate();
+                    } finally {
+                        delete.close();
+                    }
+                } catch (SQLException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
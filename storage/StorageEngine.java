@@ -0,0 +1,136 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.users.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This interface is the persistence layer behind <CODE>HardwareStore</CODE>.
+ * The store keeps its working set in memory and tells the engine about every
+ * change; each engine decides how (and whether) to make the change durable,
+ * and how to load the store back at startup.
+ *
+ * The change methods are called in the order the changes to any one item or
+ * user happen, and <b>before</b> the change is applied to the objects passed
+ * in. Quantity changes and sales of different items may be recorded from
+ * several threads at once (sales themselves one at a time), so engines must
+ * be thread safe. <CODE>beginSave()</CODE> is called with the store locked,
+ * right before the store is copied into the snapshot passed to
+ * <CODE>save()</CODE>, which runs after the lock is released.
+ *
+ * @author Zachary King
+ */
+public interface StorageEngine extends Closeable {
+
+    /**
+     * Loads the store. Called once, before any other method.
+     * @return the items, users and user ID counter; the transactions are
+     * available through <CODE>getTransactionHistory()</CODE>
+     * @throws IOException
+     */
+    StoreSnapshot load() throws IOException;
+
+    /**
+     * Returns the transaction history opened by <CODE>load()</CODE>.
+     * @return the transaction history
+     */
+    TransactionHistory getTransactionHistory();
+
+    /**
+     * Records a new item.
+     * @param item the new item
+     * @throws IOException
+     */
+    void itemAdded(Item item) throws IOException;
+
+    /**
+     * Records a change of quantity.
+     * @param item the item, still holding its old quantity
+     * @param delta the (signed) quantity being added
+     * @throws IOException
+     */
+    void quantityChanged(Item item, int delta) throws IOException;
+
+    /**
+     * Records the removal of an item.
+     * @param item the item being removed
+     * @throws IOException
+     */
+    void itemRemoved(Item item) throws IOException;
+
+    /**
+     * Records a new or edited user.
+     * @param user the user's new state
+     * @throws IOException
+     */
+    void userSaved(User user) throws IOException;
+
+    /**
+     * Records a sale, which also removes the sold quantity from the item.
+     * @param transaction the new transaction
+     * @param item the item sold, still holding its old quantity
+     * @throws IOException
+     */
+    void saleRecorded(Transaction transaction, Item item) throws IOException;
+
+    /**
+     * Records the sales of a cart, which also remove the sold quantities from
+     * their items. The sales must be made durable as one unit: after a crash
+     * either all of them or none of them are loaded back.
+     * @param transactions the new transactions, one per line of the cart
+     * @param items the item sold by each transaction, still holding its old
+     * quantity; every item appears once
+     * @throws IOException
+     */
+    void cartRecorded(List<Transaction> transactions, List<Item> items) throws IOException;
+
+    /**
+     * Waits until every change the calling thread has recorded is durable.
+     * Engines may make changes durable in groups, so the change methods can
+     * return before that; the store calls this after releasing its locks,
+     * so changes from other threads can join the same write meanwhile.
+     * @throws IOException if one of the changes could not be made durable
+     */
+    void awaitDurable() throws IOException;
+
+    /**
+     * Returns true if <CODE>save()</CODE> needs the items in the snapshot.
+     * An engine that keeps the items up to date itself returns false, and
+     * the store then leaves them out of the snapshot (null).
+     * @return whether the snapshot has to hold the items
+     */
+    boolean savesItems();
+
+    /**
+     * Prepares a save while the store is locked.
+     * @return an engine-specific marker stored in the snapshot's
+     * <CODE>logSegment</CODE>
+     * @throws IOException
+     */
+    long beginSave() throws IOException;
+
+    /**
+     * Saves a snapshot taken right after <CODE>beginSave()</CODE>.
+     * @param snapshot the snapshot
+     * @param listener receives progress reports, or null
+     * @return true if the snapshot was saved
+     */
+    boolean save(StoreSnapshot snapshot, ProgressListener listener);
+
+    /**
+     * Returns true if the engine would like the store to be saved, for example
+     * because its log has grown large.
+     * @return whether a save is due
+     */
+    boolean isSaveDue();
+}
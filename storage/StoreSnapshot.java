@@ -0,0 +1,108 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.users.User;
+
+import java.util.ArrayList;
+
+/**
+ * This class is a consistent point-in-time copy of the store's contents. It
+ * is taken while the store is briefly locked and can then be written to disk
+ * without holding up further changes. <CODE>logSegment</CODE> is the first
+ * mutation log segment that is <b>not</b> covered by this snapshot.
+ *
+ * The transaction history lives in its own file, so the snapshot only
+ * records <CODE>transactionCount</CODE>, the number of transactions in that
+ * file it vouches for. <CODE>transactions</CODE> holds the transactions that
+ * still have to be appended to the file to reach that count (when writing),
+ * or the full history read from an older database file (when reading).
+ *
+ * <CODE>items</CODE> is null in a snapshot of a store whose items are kept
+ * in the <CODE>MappedItemTable</CODE>, which is their record instead.
+ *
+ * @author Zachary King
+ */
+public class StoreSnapshot {
+    private final ArrayList<Item> items;
+    private final ArrayList<User> users;
+    private final ArrayList<Transaction> transactions;
+    private final long transactionCount;
+    private final int userIdCounter;
+    private final long logSegment;
+
+    /**
+     * Constructor initializes a snapshot with the provided (already copied)
+     * contents.
+     * @param items copies of all items, or null if they are kept in the
+     * item table
+     * @param users copies of all users
+     * @param transactions transactions not yet in the transaction file
+     * @param transactionCount the number of transactions in the transaction file
+     * @param userIdCounter the next user ID to hand out
+     * @param logSegment the first log segment not covered by the snapshot
+     */
+    public StoreSnapshot(ArrayList<Item> items, ArrayList<User> users, ArrayList<Transaction> transactions,
+                         long transactionCount, int userIdCounter, long logSegment) {
+        this.items = items;
+        this.users = users;
+        this.transactions = transactions;
+        this.transactionCount = transactionCount;
+        this.userIdCounter = userIdCounter;
+        this.logSegment = logSegment;
+    }
+
+    /**
+     * Get the items.
+     * @return items, or null if they are kept in the item table
+     */
+    public ArrayList<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Get the users.
+     * @return users
+     */
+    public ArrayList<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * Get the transactions.
+     * @return transactions
+     */
+    public ArrayList<Transaction> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Get the number of transactions in the transaction file.
+     * @return transactionCount
+     */
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * Get the user ID counter.
+     * @return userIdCounter
+     */
+    public int getUserIdCounter() {
+        return userIdCounter;
+    }
+
+    /**
+     * Get the first log segment not covered by this snapshot.
+     * @return logSegment
+     */
+    public long getLogSegment() {
+        return logSegment;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This interface is the on-disk part of a <CODE>TransactionHistory</CODE>: an
+ * append-only, position-addressable list of transactions provided by the
+ * storage engine.
+ *
+ * @author Zachary King
+ */
+public interface TransactionArchive extends Closeable {
+
+    /**
+     * Returns the number of transactions stored.
+     * @return the transaction count
+     * @throws IOException
+     */
+    long size() throws IOException;
+
+    /**
+     * Reads a range of transactions.
+     * @param first the position of the first transaction
+     * @param count the number of transactions to read
+     * @return the transactions, in order
+     * @throws IOException
+     */
+    List<Transaction> read(long first, int count) throws IOException;
+
+    /**
+     * Appends transactions.
+     * @param transactions the transactions to append
+     * @throws IOException
+     */
+    void append(List<Transaction> transactions) throws IOException;
+
+    /**
+     * Cuts the archive down to the given number of transactions.
+     * @param count the number of transactions to keep
+     * @throws IOException
+     */
+    void truncate(long count) throws IOException;
+}
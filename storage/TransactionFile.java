@@ -0,0 +1,137 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores the transaction history in its own append-only file
+ * ("transactions.dat"), in the <CODE>RecordCodec</CODE> format. A second file
+ * ("transactions.idx") holds the 8-byte start offset of every record, so any
+ * range of transactions can be read without touching the ones before it and
+ * nothing has to be read when the program starts.
+ *
+ * The snapshot records how many transactions it vouches for. Records past that
+ * count (from a checkpoint that crashed before its snapshot was written) are
+ * cut off with <CODE>truncate()</CODE> at startup.
+ *
+ * @author Zachary King
+ */
+public class TransactionFile implements TransactionArchive {
+
+    private final RandomAccessFile data;
+    private final RandomAccessFile index;
+
+    /**
+     * Constructor opens (or creates) the data and index files.
+     * @param dataFile the file holding the records
+     * @param indexFile the file holding the record offsets
+     * @throws IOException
+     */
+    public TransactionFile(File dataFile, File indexFile) throws IOException {
+        data = new RandomAccessFile(dataFile, "rw");
+        index = new RandomAccessFile(indexFile, "rw");
+    }
+
+    /**
+     * Returns the number of transactions in the file.
+     * @return the transaction count
+     * @throws IOException
+     */
+    @Override
+    public synchronized long size() throws IOException {
+        return index.length() / 8;
+    }
+
+    /**
+     * Reads a range of transactions.
+     * @param first the index of the first transaction
+     * @param count the number of transactions to read
+     * @return the transactions, in order
+     * @throws IOException
+     */
+    @Override
+    public synchronized List<Transaction> read(long first, int count) throws IOException {
+        long size = size();
+        count = (int) Math.max(0, Math.min(count, size - first));
+        List<Transaction> transactions = new ArrayList<Transaction>(count);
+        if (count == 0) {
+            return transactions;
+        }
+        long start = offset(first);
+        long end = first + count < size ? offset(first + count) : data.length();
+        byte[] bytes = new byte[(int) (end - start)];
+        data.seek(start);
+        data.readFully(bytes);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < count; i++) {
+            transactions.add(RecordCodec.readTransaction(input));
+        }
+        return transactions;
+    }
+
+    /**
+     * Appends transactions and syncs both files to disk.
+     * @param transactions the transactions to append
+     * @throws IOException
+     */
+    @Override
+    public synchronized void append(List<Transaction> transactions) throws IOException {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordOutput = new DataOutputStream(records);
+        ByteArrayOutputStream offsets = new ByteArrayOutputStream(transactions.size() * 8);
+        DataOutputStream offsetOutput = new DataOutputStream(offsets);
+        long position = data.length();
+        for (Transaction transaction : transactions) {
+            offsetOutput.writeLong(position + records.size());
+            RecordCodec.writeTransaction(recordOutput, transaction);
+        }
+        data.seek(position);
+        data.write(records.toByteArray());
+        data.getFD().sync();
+        // The index is written last, so a record only counts once it is complete
+        index.seek(index.length());
+        index.write(offsets.toByteArray());
+        index.getFD().sync();
+    }
+
+    /**
+     * Cuts the file down to the given number of transactions.
+     * @param count the number of transactions to keep
+     * @throws IOException
+     */
+    @Override
+    public synchronized void truncate(long count) throws IOException {
+        if (count >= size()) {
+            return;
+        }
+        data.setLength(count == 0 ? 0 : offset(count));
+        index.setLength(count * 8);
+    }
+
+    /**
+     * Closes both files.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+        index.close();
+    }
+
+    private long offset(long position) throws IOException {
+        index.seek(position * 8);
+        return index.readLong();
+    }
+}
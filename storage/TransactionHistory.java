@@ -0,0 +1,238 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.storage;
+
+import hardwarestoregui.Transaction;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is the full, ordered list of transactions. Transactions covered
+ * by the last snapshot are "archived" in a <CODE>TransactionArchive</CODE> and
+ * only read on demand, <CODE>PAGE_SIZE</CODE> at a time, through a small cache
+ * of recently used pages. Newer transactions are kept in memory until the
+ * next checkpoint archives them.
+ *
+ * Transactions are never changed or removed, so the first <CODE>size()</CODE>
+ * entries seen at any moment stay valid while new ones are added. Adding a
+ * transaction only holds the history's monitor for as long as it takes to
+ * append it to the list; pages are read from the archive outside of it, so a
+ * slow read does not hold up sales.
+ *
+ * @author Zachary King
+ */
+public class TransactionHistory implements Iterable<Transaction> {
+
+    /**
+     * The number of transactions read from the archive at a time.
+     */
+    public static final int PAGE_SIZE = 1024;
+
+    private static final int CACHED_PAGES = 16;
+
+    private final TransactionArchive archive;
+    private long archivedCount;
+    private final ArrayList<Transaction> recent = new ArrayList<Transaction>();
+    private final LinkedHashMap<Long, List<Transaction>> pages =
+            new LinkedHashMap<Long, List<Transaction>>(CACHED_PAGES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, List<Transaction>> eldest) {
+                    return size() > CACHED_PAGES;
+                }
+            };
+
+    /**
+     * Constructor initializes a history over the given archive.
+     * @param archive the archive holding the archived transactions
+     * @param archivedCount the number of transactions in the archive
+     */
+    public TransactionHistory(TransactionArchive archive, long archivedCount) {
+        this.archive = archive;
+        this.archivedCount = archivedCount;
+    }
+
+    /**
+     * Returns the total number of transactions.
+     * @return the transaction count
+     */
+    public synchronized long size() {
+        return archivedCount + recent.size();
+    }
+
+    /**
+     * Returns the number of transactions in the archive.
+     * @return the archived count
+     */
+    public synchronized long getArchivedCount() {
+        return archivedCount;
+    }
+
+    /**
+     * Returns the transaction at the given position.
+     * @param position the position, from 0 (oldest) to size() - 1
+     * @return the transaction
+     * @throws IOException
+     */
+    public Transaction get(long position) throws IOException {
+        long archived;
+        synchronized (this) {
+            archived = archivedCount;
+            if (position >= archived) {
+                return recent.get((int) (position - archived));
+            }
+        }
+        List<Transaction> page = page(position / PAGE_SIZE, archived);
+        return page.get((int) (position % PAGE_SIZE));
+    }
+
+    /**
+     * Returns up to <CODE>count</CODE> transactions starting at the given
+     * position.
+     * @param first the position of the first transaction
+     * @param count the maximum number of transactions
+     * @return the transactions, in order
+     * @throws IOException
+     */
+    public List<Transaction> getRange(long first, int count) throws IOException {
+        long archived;
+        long end;
+        List<Transaction> unarchived = null;
+        synchronized (this) {
+            archived = archivedCount;
+            end = Math.min(first + count, archived + recent.size());
+            if (end > Math.max(first, archived)) {
+                unarchived = new ArrayList<Transaction>(
+                        recent.subList((int) (Math.max(first, archived) - archived), (int) (end - archived)));
+            }
+        }
+        List<Transaction> range = new ArrayList<Transaction>((int) Math.max(0, end - first));
+        long archivedEnd = Math.min(end, archived);
+        long position = first;
+        while (position < archivedEnd) {
+            List<Transaction> page = page(position / PAGE_SIZE, archived);
+            int from = (int) (position % PAGE_SIZE);
+            int to = (int) Math.min(page.size(), from + (archivedEnd - position));
+            range.addAll(page.subList(from, to));
+            position += to - from;
+        }
+        if (unarchived != null) {
+            range.addAll(unarchived);
+        }
+        return range;
+    }
+
+    /**
+     * Adds a new transaction.
+     * @param transaction the transaction
+     */
+    public synchronized void add(Transaction transaction) {
+        recent.add(transaction);
+    }
+
+    /**
+     * Returns a copy of the transactions not yet in the archive.
+     * @return the unarchived transactions
+     */
+    public synchronized ArrayList<Transaction> getUnarchived() {
+        return new ArrayList<Transaction>(recent);
+    }
+
+    /**
+     * Appends transactions to the archive, after dropping anything past the
+     * archived count left by an earlier checkpoint that did not finish. The
+     * history only starts reading them from the archive once
+     * <CODE>markArchived()</CODE> is called.
+     * @param transactions the oldest unarchived transactions
+     * @throws IOException
+     */
+    public void archive(List<Transaction> transactions) throws IOException {
+        archive.truncate(getArchivedCount());
+        archive.append(transactions);
+    }
+
+    /**
+     * Moves the oldest <CODE>count</CODE> in-memory transactions over to the
+     * archive. Called once they are safely stored there.
+     * @param count the number of transactions archived
+     */
+    public synchronized void markArchived(int count) {
+        recent.subList(0, count).clear();
+        archivedCount += count;
+    }
+
+    /**
+     * Returns an iterator over the transactions present when it is created,
+     * reading the archive one page at a time.
+     * @return the iterator
+     */
+    @Override
+    public Iterator<Transaction> iterator() {
+        return iterator(size());
+    }
+
+    /**
+     * Returns an iterator over the first transactions of the history, for
+     * example those present at the version a store view reads.
+     * @param end the number of transactions to iterate over, at most
+     * <CODE>size()</CODE>
+     * @return the iterator
+     */
+    public Iterator<Transaction> iterator(final long end) {
+        return new Iterator<Transaction>() {
+            private long position;
+            private List<Transaction> page = new ArrayList<Transaction>();
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return position < end;
+            }
+
+            @Override
+            public Transaction next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (next == page.size()) {
+                    try {
+                        page = getRange(position, (int) Math.min(PAGE_SIZE, end - position));
+                    } catch (IOException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                    next = 0;
+                }
+                position++;
+                return page.get(next++);
+            }
+        };
+    }
+
+    private List<Transaction> page(long number, long archived) throws IOException {
+        List<Transaction> page;
+        synchronized (pages) {
+            page = pages.get(number);
+        }
+        if (page == null) {
+            long first = number * PAGE_SIZE;
+            page = archive.read(first, (int) Math.min(PAGE_SIZE, archived - first));
+            // The last page grows as transactions are archived, so only full
+            // pages are cached
+            if (page.size() == PAGE_SIZE) {
+                synchronized (pages) {
+                    pages.put(number, page);
+                }
+            }
+        }
+        return page;
+    }
+}
@@ -6,12 +6,17 @@
 
 package hardwarestoregui.users;
 
+import hardwarestoregui.format.ColumnLayout;
 
 /**
  *
  * @author Zachary King
  */
 public class Customer extends User {
+    private static final long serialVersionUID = 4474626862995786344L;
+    private static final ColumnLayout ROW_LAYOUT =
+            new ColumnLayout("| %-10s| %-9s| %-12s| %-12s| Ph#: %12s, Add: %20s |%n");
+
     private String phoneNumber;
     private String address;
 
@@ -43,6 +48,7 @@ public class Customer extends User {
      */
     public void setPhoneNumber(String phoneNumber) {
         this.phoneNumber = phoneNumber;
+        invalidateFormattedText();
     }
 
     /**
@@ -59,16 +65,27 @@ public class Customer extends User {
      */
     public void setAddress(String address) {
         this.address = address;
+        invalidateFormattedText();
     }
     
     /**
-     * Returns the attributes of the customer, in a formatted text fashion.
-     * @return Formatted Text.
+     * Appends the attributes of the customer, in a formatted text fashion.
+     * @param buffer the buffer to write to
      */
     @Override
-    public String getFormattedText() {
-        return String.format("| %-10s| %-9s| %-12s| %-12s| Ph#: %12s, Add: %20s |%n",
-                "Customer", id, firstName, lastName, phoneNumber, address);
+    protected void formatText(StringBuilder buffer) {
+        ROW_LAYOUT.text(buffer, 0, "Customer");
+        ROW_LAYOUT.number(buffer, 1, id);
+        ROW_LAYOUT.text(buffer, 2, firstName);
+        ROW_LAYOUT.text(buffer, 3, lastName);
+        ROW_LAYOUT.text(buffer, 4, phoneNumber);
+        ROW_LAYOUT.text(buffer, 5, address);
+        ROW_LAYOUT.end(buffer);
+    }
+
+    @Override
+    public User copy() {
+        return new Customer(id, firstName, lastName, phoneNumber, address);
     }
 
 }
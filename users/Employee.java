@@ -6,11 +6,17 @@
 
 package hardwarestoregui.users;
 
+import hardwarestoregui.format.ColumnLayout;
+
 /**
  * Employee is a subclass of User
  * @author Zachary King
  */
 public class Employee extends User {
+    private static final long serialVersionUID = 8061317379749418618L;
+    private static final ColumnLayout ROW_LAYOUT =
+            new ColumnLayout("| %-10s| %-9s| %-12s| %-12s| SSN: %12d, Salary: %10s        |%n");
+
     private int socialSecurityNumber;
     private float monthlySalary;
 
@@ -42,6 +48,7 @@ public class Employee extends User {
      */
     public void setSocialSecurityNumber(int socialSecurityNumber) {
         this.socialSecurityNumber = socialSecurityNumber;
+        invalidateFormattedText();
     }
 
     /**
@@ -58,17 +65,30 @@ public class Employee extends User {
      */
     public void setMonthlySalary(float monthlySalary) {
         this.monthlySalary = monthlySalary;
+        invalidateFormattedText();
     }
 
 
     /**
-     * Returns the attributes of the employee, in a formatted text fashion.
-     * @return Formatted Text.
+     * Appends the attributes of the employee, in a formatted text fashion.
+     * @param buffer the buffer to write to
      */
     @Override
-    public String getFormattedText() {
-        return String.format("| %-10s| %-9s| %-12s| %-12s| SSN: %12d, Salary: %10s        |%n",
-                "Employee", id, firstName, lastName, socialSecurityNumber, monthlySalary);
+    protected void formatText(StringBuilder buffer) {
+        ROW_LAYOUT.text(buffer, 0, "Employee");
+        ROW_LAYOUT.number(buffer, 1, id);
+        ROW_LAYOUT.text(buffer, 2, firstName);
+        ROW_LAYOUT.text(buffer, 3, lastName);
+        ROW_LAYOUT.number(buffer, 4, socialSecurityNumber);
+        int start = ROW_LAYOUT.open(buffer, 5);
+        buffer.append(monthlySalary);
+        ROW_LAYOUT.close(buffer, 5, start);
+        ROW_LAYOUT.end(buffer);
+    }
+
+    @Override
+    public User copy() {
+        return new Employee(id, firstName, lastName, socialSecurityNumber, monthlySalary);
     }
 
 }
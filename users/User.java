@@ -13,12 +13,24 @@ import java.io.Serializable;
  * @author Zachary King
  */
 public abstract class User implements Serializable {
+    private static final long serialVersionUID = 632064971045381370L;
+
 
     protected final int id;
     protected String firstName;
     protected String lastName;
     public final boolean isEmployee;
 
+    // The row shown in user tables, and a count of changes to detect a row
+    // formatted while the user was being edited
+    private transient volatile String formattedText;
+    private transient volatile int modCount;
+
+    // The version from which this user is current, and the user it replaced,
+    // kept for store views reading an earlier version
+    private transient volatile long version;
+    private transient volatile User previous;
+
     /**
      * Constructor initializes a user object with the provided values.
      * @param id User ID
@@ -46,6 +58,7 @@ public abstract class User implements Serializable {
      */
     public void setLastName(String lastName) {
         this.lastName = lastName;
+        invalidateFormattedText();
     }
 
     /**
@@ -70,12 +83,120 @@ public abstract class User implements Serializable {
      */
     public void setFirstName(String firstName) {
         this.firstName = firstName;
+        invalidateFormattedText();
+    }
+
+    /**
+     * Returns the attributes of the user, in a formatted text fashion. The
+     * text is formatted on first use and kept until the user is edited.
+     * @return Formatted Text.
+     */
+    public String getFormattedText() {
+        String text = formattedText;
+        if (text == null) {
+            int version = modCount;
+            StringBuilder buffer = new StringBuilder(128);
+            formatText(buffer);
+            text = buffer.toString();
+            formattedText = text;
+            if (modCount != version) {
+                // Changed while being formatted; do not keep the old text
+                formattedText = null;
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Appends the same text as <CODE>getFormattedText()</CODE> to the given
+     * buffer. Once cached, this is a plain copy of the row.
+     * @param buffer the buffer to write to
+     */
+    public void appendFormattedText(StringBuilder buffer) {
+        buffer.append(getFormattedText());
+    }
+
+    /**
+     * Drops the cached formatted text. Called by every setter.
+     */
+    protected void invalidateFormattedText() {
+        modCount++;
+        formattedText = null;
+    }
+
+    /**
+     * Records that this user replaces the given one (or is new) from the
+     * given version on. Store views reading an earlier version still see the
+     * previous user; users no view can read any more are dropped. Call this
+     * before the user is stored.
+     * @param previous the user replaced, or null for a new user
+     * @param version the version of the change
+     * @param oldestVersion the oldest version a view may still read
+     */
+    public void replaces(User previous, long version, long oldestVersion) {
+        this.version = version;
+        this.previous = previous;
+        User kept = this;
+        while (kept != null && kept.version > oldestVersion) {
+            kept = kept.previous;
+        }
+        if (kept != null) {
+            kept.previous = null;
+        }
+    }
+
+    /**
+     * Keeps a copy of the user as it is now, together with its formatted
+     * row, for the store views reading a version before the given one. Call
+     * this before the user is edited in place through its setters, holding
+     * the user's monitor for both, so that no view copies a half edited user.
+     * @param version the version of the edit
+     * @param oldestVersion the oldest version a view may still read
+     */
+    public void keepPrevious(long version, long oldestVersion) {
+        User old = copy();
+        old.formattedText = formattedText;
+        old.version = this.version;
+        old.previous = previous;
+        replaces(old, version, oldestVersion);
+    }
+
+    /**
+     * Returns the user as it was at the given version.
+     * @param version the version
+     * @return the user, or null if it did not exist yet
+     */
+    public User asOf(long version) {
+        User user;
+        synchronized (this) {
+            if (this.version <= version) {
+                // The current user may be edited in place later; hand out a
+                // copy that keeps the formatted row
+                User current = copy();
+                current.formattedText = formattedText;
+                current.version = this.version;
+                return current;
+            }
+            user = previous;
+        }
+        while (user != null && user.version > version) {
+            user = user.previous;
+        }
+        return user;
     }
 
     /**
      * Abstract print method, to be implemented by subclasses of class User.
-     * @return 
+     * Appends the attributes of the user to the given buffer.
+     * @param buffer the buffer to write to
+     */
+    protected abstract void formatText(StringBuilder buffer);
+
+    /**
+     * Returns an independent copy of this user, used when taking a snapshot of
+     * the store while it keeps changing.
+     * @return a copy of this user
      */
-    public abstract String getFormattedText();
+    public abstract User copy();
 }
 
@@ -0,0 +1,102 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.view;
+
+import hardwarestoregui.items.Appliances;
+import hardwarestoregui.items.Item;
+import hardwarestoregui.items.SmallHardwareItems;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class is the table model behind the item view. It only holds the
+ * items themselves, in the order the store returned them; a cell is read
+ * from its item when the table paints it, so only the visible rows are ever
+ * looked at.
+ *
+ * @author Zachary King
+ */
+public class ItemTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 4361466331890749371L;
+
+    /**
+     * The column of the item ID.
+     */
+    public static final int ID_COLUMN = 0;
+
+    /**
+     * The column of the quantity.
+     */
+    public static final int QUANTITY_COLUMN = 2;
+
+    private static final String[] COLUMNS = {"Item ID", "Name", "Quantity", "Price", "Item Type", "Category / Brand and type"};
+
+    private List<Item> items = new ArrayList<Item>();
+
+    /**
+     * Replaces the items shown.
+     * @param items the items, in the order they should be listed
+     */
+    public void setItems(List<Item> items) {
+        this.items = items;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Get the item shown in a row.
+     * @param row the row
+     * @return the item
+     */
+    public Item getItem(int row) {
+        return items.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return items.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == QUANTITY_COLUMN ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Item item = items.get(row);
+        switch (column) {
+            case ID_COLUMN:
+                return item.getIdNumber();
+            case 1:
+                return item.getName();
+            case QUANTITY_COLUMN:
+                return item.getQuantity();
+            case 3:
+                return String.format("%.2f", item.getPrice());
+            case 4:
+                return item instanceof Appliances ? "Appliances" : "Small Hardware Items";
+            default:
+                if (item instanceof SmallHardwareItems) {
+                    return ((SmallHardwareItems) item).getCategory();
+                }
+                return ((Appliances) item).getBrand() + " " + ((Appliances) item).getType();
+        }
+    }
+}
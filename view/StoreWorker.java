@@ -0,0 +1,166 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.view;
+
+import hardwarestoregui.storage.ProgressListener;
+
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * This class runs a piece of store work on Swing's background worker threads
+ * and hands the result back on the event dispatch thread, so the menu stays
+ * responsive while the store is searched, formatted or saved. Subclasses put
+ * the store calls in <CODE>doInBackground()</CODE> and update the user
+ * interface in <CODE>succeeded()</CODE>.
+ *
+ * A worker started with a title shows a progress monitor if it runs for more
+ * than a moment. The worker is itself a <CODE>ProgressListener</CODE> that
+ * can be passed to long store operations: it moves the monitor along, and
+ * once the user presses Cancel it throws a
+ * <CODE>CancellationException</CODE> from the next progress report, which
+ * abandons the operation at a point where that is safe. The worker thread is
+ * never interrupted: an interrupt would close the file channels the store
+ * shares between threads.
+ *
+ * @param <T> the type of the result
+ * @author Zachary King
+ */
+public abstract class StoreWorker<T> extends SwingWorker<T, Void> implements ProgressListener {
+
+    private static final int POPUP_MILLIS = 400;
+
+    private final Component parent;
+    private final String title;
+    private volatile String note = "";
+    private ProgressMonitor monitor;
+    private Timer cancelCheck;
+
+    /**
+     * Constructor initializes a worker that shows no progress.
+     * @param parent the component error messages are shown over
+     */
+    public StoreWorker(Component parent) {
+        this(parent, null);
+    }
+
+    /**
+     * Constructor initializes a worker that shows its progress in a
+     * cancellable progress monitor.
+     * @param parent the component the monitor is shown over
+     * @param title the title of the monitor, or null for no monitor
+     */
+    public StoreWorker(Component parent, String title) {
+        this.parent = parent;
+        this.title = title;
+    }
+
+    /**
+     * Starts the worker. Call this on the event dispatch thread.
+     */
+    public void start() {
+        if (title != null) {
+            monitor = new ProgressMonitor(parent, title, "", 0, 100);
+            monitor.setMillisToDecideToPopup(POPUP_MILLIS);
+            monitor.setMillisToPopup(POPUP_MILLIS);
+            addPropertyChangeListener(new PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    if ("progress".equals(evt.getPropertyName()) && monitor != null) {
+                        monitor.setNote(note);
+                        monitor.setProgress((Integer) evt.getNewValue());
+                    }
+                }
+            });
+            cancelCheck = new Timer(100, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    if (monitor != null && monitor.isCanceled()) {
+                        cancel(false);
+                    }
+                }
+            });
+            cancelCheck.start();
+        }
+        execute();
+    }
+
+    /**
+     * Reports progress from the background thread.
+     * @param percent a value between 0 and 100
+     * @param note a short description of the current step
+     * @throws CancellationException if the worker has been cancelled and the
+     * operation is not yet finished
+     */
+    @Override
+    public void progress(int percent, String note) {
+        if (isCancelled() && percent < 100) {
+            throw new CancellationException();
+        }
+        this.note = note;
+        setProgress(Math.max(0, Math.min(100, percent)));
+    }
+
+    @Override
+    protected final void done() {
+        if (cancelCheck != null) {
+            cancelCheck.stop();
+        }
+        if (monitor != null) {
+            monitor.close();
+            monitor = null;
+        }
+        if (isCancelled()) {
+            cancelled();
+            return;
+        }
+        try {
+            succeeded(get());
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof CancellationException) {
+                cancelled();
+            } else {
+                failed(ex.getCause());
+            }
+        } catch (InterruptedException ex) {
+            failed(ex);
+        }
+    }
+
+    /**
+     * Called on the event dispatch thread with the result of
+     * <CODE>doInBackground()</CODE>.
+     * @param result the result
+     */
+    protected abstract void succeeded(T result);
+
+    /**
+     * Called on the event dispatch thread if the worker was cancelled. Does
+     * nothing by default.
+     */
+    protected void cancelled() {
+    }
+
+    /**
+     * Called on the event dispatch thread if <CODE>doInBackground()</CODE>
+     * threw. Shows the error by default.
+     * @param cause what was thrown
+     */
+    protected void failed(Throwable cause) {
+        System.err.println(cause.toString());
+        JOptionPane.showMessageDialog(parent, "The operation failed: " + cause.getMessage());
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.view;
+
+import hardwarestoregui.HardwareStore;
+import hardwarestoregui.Transaction;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class is the table model behind the transaction view. It holds no
+ * transactions at all: a row is mapped to a position in the store's history
+ * (either directly, or through the positions returned by one of the
+ * transaction index lookups), and the transaction is read from the history
+ * when the table paints that row. The history keeps recently read pages in
+ * memory, so scrolling only reads the pages that come into view, and
+ * opening the view takes the same time however long the history is.
+ *
+ * Rows are read in blocks of <CODE>BLOCK_SIZE</CODE> on a background worker,
+ * so the history file is never read on the event dispatch thread. A row whose
+ * block is still loading shows empty cells and is repainted once its block
+ * arrives. The most recently used blocks are kept.
+ *
+ * @author Zachary King
+ */
+public class TransactionTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = -2930369317134402527L;
+
+    private static final String[] COLUMNS = {"Item ID", "Date", "Quantity", "Customer ID", "Employee ID"};
+
+    private static final int BLOCK_SIZE = 256;
+    private static final int MAX_BLOCKS = 16;
+
+    private final HardwareStore hardwareStore;
+    private long[] positions;
+    private long count;
+    private boolean newestFirst;
+
+    // Loaded blocks by block number, least recently used first
+    private final LinkedHashMap<Long, Transaction[]> blocks = new LinkedHashMap<Long, Transaction[]>(MAX_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Transaction[]> eldest) {
+            return size() > MAX_BLOCKS;
+        }
+    };
+    private final Set<Long> loading = new HashSet<Long>();
+    // Changes whenever the rows change, so blocks loaded for older rows are dropped
+    private int generation;
+
+    /**
+     * Constructor initializes a model over all the store's transactions.
+     * @param hardwareStore the store
+     */
+    public TransactionTableModel(HardwareStore hardwareStore) {
+        this.hardwareStore = hardwareStore;
+        showAll();
+    }
+
+    /**
+     * Shows every transaction in the history, including the ones added since
+     * the model was last updated.
+     */
+    public void showAll() {
+        positions = null;
+        count = hardwareStore.getTransactionCount();
+        clearBlocks();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Shows only the transactions at the given positions.
+     * @param positions the positions in the history, in increasing order
+     */
+    public void showPositions(long[] positions) {
+        this.positions = positions;
+        count = positions.length;
+        clearBlocks();
+        fireTableDataChanged();
+    }
+
+    /**
+     * Lists the transactions newest first instead of oldest first.
+     * @param newestFirst true to reverse the order
+     */
+    public void setNewestFirst(boolean newestFirst) {
+        this.newestFirst = newestFirst;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return (int) Math.min(count, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 0 || column == 1 ? String.class : Integer.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Transaction transaction = getTransaction(row);
+        if (transaction == null) {
+            return null;
+        }
+        switch (column) {
+            case 0:
+                return transaction.getItemID();
+            case 1:
+                return transaction.getsaleDate().toString();
+            case 2:
+                return transaction.getSaleQuantity();
+            case 3:
+                return transaction.getCustomerId();
+            default:
+                return transaction.getEmployeeId();
+        }
+    }
+
+    private Transaction getTransaction(int row) {
+        long index = newestFirst ? count - 1 - row : row;
+        long block = index / BLOCK_SIZE;
+        Transaction[] transactions = blocks.get(block);
+        if (transactions == null) {
+            load(block);
+            return null;
+        }
+        return transactions[(int) (index - block * BLOCK_SIZE)];
+    }
+
+    private void clearBlocks() {
+        blocks.clear();
+        loading.clear();
+        generation++;
+    }
+
+    /**
+     * Reads a block of rows on a background worker, unless it is already
+     * being read.
+     */
+    private void load(final long block) {
+        if (!loading.add(block)) {
+            return;
+        }
+        final int loadGeneration = generation;
+        final long[] loadPositions = positions;
+        final long start = block * BLOCK_SIZE;
+        final int size = (int) Math.min(BLOCK_SIZE, count - start);
+        new StoreWorker<Transaction[]>(null) {
+            @Override
+            protected Transaction[] doInBackground() throws IOException {
+                Transaction[] transactions = new Transaction[size];
+                for (int i = 0; i < size; i++) {
+                    long index = start + i;
+                    long position = loadPositions == null ? index : loadPositions[(int) index];
+                    transactions[i] = hardwareStore.getTransaction(position);
+                }
+                return transactions;
+            }
+
+            @Override
+            protected void succeeded(Transaction[] transactions) {
+                loaded(loadGeneration, block, transactions);
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                System.err.println(cause.toString());
+                // Keep the rows empty rather than reading them again on every repaint
+                loaded(loadGeneration, block, new Transaction[size]);
+            }
+        }.start();
+    }
+
+    private void loaded(int loadGeneration, long block, Transaction[] transactions) {
+        if (loadGeneration != generation) {
+            return;
+        }
+        loading.remove(block);
+        blocks.put(block, transactions);
+        long first = block * BLOCK_SIZE;
+        long last = first + transactions.length - 1;
+        if (newestFirst) {
+            long reversedFirst = count - 1 - last;
+            last = count - 1 - first;
+            first = reversedFirst;
+        }
+        fireTableRowsUpdated((int) first, (int) last);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Hardware Store Management Software v0.1
+ * Developed for CS3354: Object Oriented Design and Programming.
+ * Copyright: Zachary King
+ */
+
+package hardwarestoregui.view;
+
+import hardwarestoregui.users.Customer;
+import hardwarestoregui.users.Employee;
+import hardwarestoregui.users.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class is the table model behind the user view. Like
+ * <CODE>ItemTableModel</CODE> it holds only the users, sorted by ID, and
+ * reads a cell when the table paints it.
+ *
+ * @author Zachary King
+ */
+public class UserTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 5220568170438329155L;
+
+    private static final String[] COLUMNS = {"User Type", "User ID", "First Name", "Last Name", "Special"};
+
+    private List<User> users = new ArrayList<User>();
+
+    /**
+     * Replaces the users shown.
+     * @param users the users, in the order they should be listed
+     */
+    public void setUsers(List<User> users) {
+        this.users = users;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return users.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == 1 ? Integer.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        User user = users.get(row);
+        switch (column) {
+            case 0:
+                return user.isEmployee ? "Employee" : "Customer";
+            case 1:
+                return user.getId();
+            case 2:
+                return user.getFirstName();
+            case 3:
+                return user.getLastName();
+            default:
+                if (user instanceof Employee) {
+                    Employee employee = (Employee) user;
+                    return "SSN: " + employee.getSocialSecurityNumber() + ", Salary: " + employee.getMonthlySalary();
+                }
+                Customer customer = (Customer) user;
+                return "Ph#: " + customer.getPhoneNumber() + ", Add: " + customer.getAddress();
+        }
+    }
+}